@@ -1,24 +1,67 @@
 package bank;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 // Represents a single bank account
 public class Account {
 
+    final int number;     // the 1001 in "ACC1001" — its key in AccountTable
     String accountNumber;
     String ownerName;
+    String nameKey;  // ownerName lower-cased once, used by NameIndex
     String email;
-    double balance;
+    volatile long balance; // in paise (see Money); volatile: read without a lock by the API threads
     String type; // SAVINGS or CURRENT
 
-    // BST pointers — used by AccountBST
+    // AVL tree pointers — used by AccountBST
     Account left, right;
+    int height = 1; // height of this node's subtree, kept by AccountBST
+
+    // Set by Bank before the account goes into its AccountTable
+    TransactionList history;
+    UndoStack       undo;
+
+    // Atomic access to balance, so it can change without a lock
+    private static final VarHandle BALANCE;
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balance", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
-    public Account(String accountNumber, String ownerName, String email, double balance, String type) {
-        this.accountNumber = accountNumber;
+    public Account(int number, String ownerName, String email, long balance, String type) {
+        this.number        = number;
+        this.accountNumber = "ACC" + number;
         this.ownerName     = ownerName;
+        this.nameKey       = NameIndex.normalize(ownerName);
         this.email         = email;
         this.balance       = balance;
         this.type          = type;
         this.left          = null;
         this.right         = null;
     }
+
+    // Add to the balance with a compare-and-set loop; returns the new balance.
+    // Bank checks Bank.fits first; this is the last line against overflow.
+    long credit(long amount) {
+        while (true) {
+            long cur  = balance;
+            if (!Bank.fits(cur, amount)) throw new RuntimeException("Balance limit exceeded.");
+            long next = cur + amount;
+            if (BALANCE.compareAndSet(this, cur, next)) return next;
+        }
+    }
+
+    // Take from the balance unless that would make it negative;
+    // returns the new balance, or -1 if there wasn't enough
+    long tryDebit(long amount) {
+        while (true) {
+            long cur = balance;
+            if (cur < amount) return -1;
+            if (BALANCE.compareAndSet(this, cur, cur - amount)) return cur - amount;
+        }
+    }
 }
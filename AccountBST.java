@@ -2,9 +2,10 @@ package bank;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /*
- * DSA: Binary Search Tree (BST)
+ * DSA: AVL Tree (a self-balancing Binary Search Tree)
  *
  * How it works:
  *   Every Account node has a left and right child.
@@ -17,66 +18,303 @@ import java.util.List;
  *                 /
  *              ACC1004
  *
- * Searching: at each node, go left or right — O(log n) average.
- * In-order traversal (left → node → right) gives sorted order.
+ * Why "self-balancing":
+ *   Bank hands out account numbers in increasing order. In a plain BST
+ *   every new account would go RIGHT, and the tree would turn into a
+ *   long chain (a linked list) where search is O(n).
+ *
+ *   An AVL tree stores the height of each node and, after each insert,
+ *   makes sure the left and right subtrees never differ in height by
+ *   more than 1. If they do, it "rotates" the nodes:
+ *
+ *     ACC1001                       ACC1002
+ *          \        rotate left     /     \
+ *         ACC1002   ──────────►  ACC1001  ACC1003
+ *              \
+ *             ACC1003
+ *
+ *   So the height stays about log2(n) and insert / search are O(log n).
+ *
+ * No recursion:
+ *   Insert remembers the path it took in a small array and walks it back
+ *   up; traversal keeps its own stack. A tree of a million accounts is
+ *   only ~30 levels deep, so nothing here can overflow the call stack.
+ *
+ * Range scans:
+ *   range("ACC150000", "ACC150100") jumps straight to the first match in
+ *   O(log n) and then walks forward, so it only touches the nodes it
+ *   returns instead of the whole tree.
+ *
+ * Deleting:
+ *   A node with at most one child is replaced by that child. A node with
+ *   two is replaced by its successor (the smallest node of its right
+ *   subtree), which is unhooked from where it was. Either way we then walk
+ *   back up the path rebalancing, exactly as after an insert. The nodes
+ *   are the accounts themselves, so nodes are relinked, never copied.
+ *
+ * Name search lives in NameIndex.
+ *
+ * Many request threads use the tree at once, so reads share a read lock
+ * and inserts and deletes take the write lock.
  */
 public class AccountBST {
 
+    // An AVL tree with 2^31 nodes is still under 46 levels deep
+    private static final int MAX_HEIGHT = 64;
+
     private Account root;
+    private int size;
 
-    // Insert an account into the BST
+    private final ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
+
+    // Account numbers are "ACC" + a number, so a shorter one is always
+    // smaller ("ACC999" < "ACC1000"). Plain compareTo would get that wrong.
+    static int compareKeys(String a, String b) {
+        if (a.length() != b.length()) return a.length() - b.length();
+        return a.compareTo(b);
+    }
+
+    // Insert an account into the tree — O(log n)
     public void insert(Account acc) {
-        root = insertRec(root, acc);
+        rw.writeLock().lock();
+        try {
+            insertNode(acc);
+        } finally {
+            rw.writeLock().unlock();
+        }
     }
 
-    private Account insertRec(Account node, Account acc) {
-        if (node == null) return acc; // empty spot found, place it here
+    private void insertNode(Account acc) {
+        acc.left   = null;
+        acc.right  = null;
+        acc.height = 1;
 
-        if (acc.accountNumber.compareTo(node.accountNumber) < 0) {
-            node.left = insertRec(node.left, acc);   // go left
-        } else if (acc.accountNumber.compareTo(node.accountNumber) > 0) {
-            node.right = insertRec(node.right, acc); // go right
+        // 1. Walk down to the empty spot, remembering the path
+        Account[] path = new Account[MAX_HEIGHT];
+        int depth = 0;
+        Account node = root;
+        int cmp = 0;
+        while (node != null) {
+            cmp = compareKeys(acc.accountNumber, node.accountNumber);
+            if (cmp == 0) return; // already in the tree
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right; // go left or right
+        }
+
+        // 2. Hang the new node there
+        if (depth == 0) {
+            root = acc;
+        } else if (cmp < 0) {
+            path[depth - 1].left = acc;
+        } else {
+            path[depth - 1].right = acc;
+        }
+        size++;
+
+        // 3. Walk back up fixing heights, rotating where a node is out of balance
+        for (int i = depth - 1; i >= 0; i--) {
+            Account n = path[i];
+            Account fixed = rebalance(n);
+            if (fixed == n) continue;
+            if (i == 0)                   root = fixed;
+            else if (path[i - 1].left == n) path[i - 1].left  = fixed;
+            else                            path[i - 1].right = fixed;
         }
-        return node;
+    }
+
+    // Remove an account from the tree — O(log n); false if it wasn't there
+    public boolean delete(String accountNumber) {
+        rw.writeLock().lock();
+        try {
+            return deleteNode(accountNumber);
+        } finally {
+            rw.writeLock().unlock();
+        }
+    }
+
+    private boolean deleteNode(String key) {
+        // 1. Find the node, remembering the path
+        Account[] path = new Account[MAX_HEIGHT];
+        int depth = 0;
+        Account node = root;
+        while (node != null) {
+            int cmp = compareKeys(key, node.accountNumber);
+            if (cmp == 0) break;
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        if (node == null) return false;
+        int at = depth; // where the replacement will sit in the path
+
+        // 2. Work out what takes its place
+        Account replacement;
+        if (node.left == null || node.right == null) {
+            replacement = node.left != null ? node.left : node.right;
+        } else {
+            depth++;                         // path[at] is filled in below
+            Account s = node.right;
+            if (s.left == null) {
+                s.left = node.left;          // the right child is the successor
+            } else {
+                Account parent = null;
+                while (s.left != null) {     // go down to the smallest node
+                    path[depth++] = s;
+                    parent = s;
+                    s = s.left;
+                }
+                parent.left = s.right;       // unhook it
+                s.left  = node.left;
+                s.right = node.right;
+            }
+            path[at] = s;
+            replacement = s;
+        }
+
+        // 3. Hang it where the node was
+        if (at == 0)                      root = replacement;
+        else if (path[at - 1].left == node) path[at - 1].left  = replacement;
+        else                                path[at - 1].right = replacement;
+        node.left  = null;
+        node.right = null;
+        size--;
+
+        // 4. Walk back up fixing heights, rotating where a node is out of balance
+        for (int i = depth - 1; i >= 0; i--) {
+            Account n = path[i];
+            Account fixed = rebalance(n);
+            if (fixed == n) continue;
+            if (i == 0)                   root = fixed;
+            else if (path[i - 1].left == n) path[i - 1].left  = fixed;
+            else                            path[i - 1].right = fixed;
+        }
+        return true;
+    }
+
+    private static int height(Account n) { return n == null ? 0 : n.height; }
+
+    private static void updateHeight(Account n) {
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+    }
+
+    // Returns the node that should now sit where n was
+    private static Account rebalance(Account n) {
+        updateHeight(n);
+        int balance = height(n.left) - height(n.right);
+        if (balance > 1) {                                   // left side too tall
+            if (height(n.left.left) < height(n.left.right)) {
+                n.left = rotateLeft(n.left);                 // left-right case
+            }
+            return rotateRight(n);
+        }
+        if (balance < -1) {                                  // right side too tall
+            if (height(n.right.right) < height(n.right.left)) {
+                n.right = rotateRight(n.right);              // right-left case
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    private static Account rotateLeft(Account n) {
+        Account r = n.right;
+        n.right = r.left;
+        r.left  = n;
+        updateHeight(n);
+        updateHeight(r);
+        return r;
+    }
+
+    private static Account rotateRight(Account n) {
+        Account l = n.left;
+        n.left  = l.right;
+        l.right = n;
+        updateHeight(n);
+        updateHeight(l);
+        return l;
     }
 
     // Search for an account by account number — O(log n)
     public Account search(String accountNumber) {
-        return searchRec(root, accountNumber);
+        rw.readLock().lock();
+        try {
+            Account node = root;
+            while (node != null) {
+                int cmp = compareKeys(accountNumber, node.accountNumber);
+                if (cmp == 0) return node;                   // found it!
+                node = cmp < 0 ? node.left : node.right;     // go left or right
+            }
+            return null; // not found
+        } finally {
+            rw.readLock().unlock();
+        }
     }
 
-    private Account searchRec(Account node, String accountNumber) {
-        if (node == null) return null; // not found
-
-        int cmp = accountNumber.compareTo(node.accountNumber);
-        if (cmp == 0) return node;        // found it!
-        if (cmp < 0)  return searchRec(node.left,  accountNumber); // go left
-        else          return searchRec(node.right, accountNumber); // go right
+    public int size() {
+        rw.readLock().lock();
+        try {
+            return size;
+        } finally {
+            rw.readLock().unlock();
+        }
     }
 
     // In-order traversal — returns all accounts sorted by account number
     public List<Account> getAllSorted() {
-        List<Account> result = new ArrayList<>();
-        inOrder(root, result);
-        return result;
+        return scan(null, true, null, Integer.MAX_VALUE);
     }
 
-    private void inOrder(Account node, List<Account> result) {
-        if (node == null) return;
-        inOrder(node.left, result);  // visit left subtree first
-        result.add(node);            // then this node
-        inOrder(node.right, result); // then right subtree
+    // Accounts from..to (both inclusive, either may be null), at most limit of them
+    public List<Account> range(String from, String to, int limit) {
+        return scan(from, true, to, limit);
     }
 
-    // Search accounts whose name contains the given keyword
-    public List<Account> searchByName(String keyword) {
-        List<Account> all    = getAllSorted();
-        List<Account> result = new ArrayList<>();
-        for (Account a : all) {
-            if (a.ownerName.toLowerCase().contains(keyword.toLowerCase())) {
-                result.add(a);
+    // The next page: up to limit accounts strictly after the given one (null = start)
+    public List<Account> after(String after, int limit) {
+        return scan(after, false, null, limit);
+    }
+
+    /*
+     * In-order walk with our own stack instead of recursion.
+     *
+     * To start in the middle of the tree we go down from the root once:
+     * every node that is >= from gets pushed (it still has to be visited)
+     * and we go left; every node < from is skipped and we go right.
+     */
+    private List<Account> scan(String from, boolean inclusive, String to, int limit) {
+        List<Account> result = new ArrayList<>(Math.min(limit, 1024));
+        if (limit <= 0) return result;
+
+        rw.readLock().lock();
+        try {
+            Account[] stack = new Account[MAX_HEIGHT];
+            int top = 0;
+
+            Account node = root;
+            while (node != null) {
+                int cmp = from == null ? 1 : compareKeys(node.accountNumber, from);
+                if (cmp > 0 || (cmp == 0 && inclusive)) {
+                    stack[top++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+
+            while (top > 0) {
+                Account n = stack[--top];                    // visit this node
+                if (to != null && compareKeys(n.accountNumber, to) > 0) break;
+                result.add(n);
+                if (result.size() >= limit) break;
+
+                node = n.right;                              // then its right subtree,
+                while (node != null) {                       // starting at its smallest node
+                    stack[top++] = node;
+                    node = node.left;
+                }
             }
+            return result;
+        } finally {
+            rw.readLock().unlock();
         }
-        return result;
     }
 }
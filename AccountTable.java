@@ -0,0 +1,162 @@
+package bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/*
+ * DSA: Open-addressing hash table keyed by a plain int
+ *
+ * Account numbers are always "ACC" + an int, so the table keys on the int
+ * itself: no String to hash, no boxing, no HashMap.Node per entry. Each
+ * Account carries its own history and undo stack, so one probe finds
+ * everything a request needs.
+ *
+ * How it works:
+ *   Two parallel arrays. keys[] holds account numbers (0 = empty slot) and
+ *   accounts[] the Account in the same slot.
+ *
+ *     put 1003:  hash ──► slot 5, taken by 1001 ──► slot 6, empty: put it there
+ *
+ *       slot:      4      5      6      7
+ *       keys:   [  0  | 1001 | 1003 |  0  ]
+ *
+ *   A lookup hashes the number and walks right from there until it finds
+ *   the key (hit) or a 0 (miss). The table is never more than half full,
+ *   so that is one or two probes, next to each other in keys[].
+ *
+ *   The hash is Fibonacci hashing: multiply by 2^32 / golden ratio and keep
+ *   the top bits, so consecutive account numbers land far apart instead of
+ *   piling up in one run of slots.
+ *
+ * Growing:
+ *   When an insert would take it past half full, a table twice the size is
+ *   built off to the side, every entry re-inserted, and the new one swapped
+ *   in through a volatile field — a reader sees the old table or the new
+ *   one, never half of each.
+ *
+ * Removing:
+ *   Emptying a slot in place could break a probe run that passes through
+ *   it, and shifting entries back would make a lock-free lookup miss one
+ *   mid-move. Accounts only leave in bulk (a partition moving to another
+ *   shard), so removeIf rebuilds the table without them the same way
+ *   growing does.
+ *
+ * Thread safety:
+ *   Lookups take no lock. Inserts are synchronized with each other. An
+ *   insert stores the Account first and then the key with a release write;
+ *   a lookup reads the key with an acquire read, so once it sees the key it
+ *   also sees the Account and everything set on it before the insert.
+ */
+public class AccountTable {
+
+    private static final VarHandle KEY = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final int GOLDEN = 0x9E3779B9; // 2^32 / golden ratio
+
+    // One generation of the table; replaced whole when it grows
+    private static final class Slots {
+        final int[]     keys;
+        final Account[] accounts;
+        final int       shift; // 32 - log2(capacity): keeps the top bits of the hash
+
+        Slots(int capacity) {
+            keys     = new int[capacity];
+            accounts = new Account[capacity];
+            shift    = 32 - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        int home(int key) {
+            return (key * GOLDEN) >>> shift;
+        }
+    }
+
+    private volatile Slots slots = new Slots(64);
+    private volatile int   size;
+
+    // The account with this number, or null — O(1), no lock
+    public Account get(int number) {
+        if (number == 0) return null;
+        Slots s = slots;
+        int mask = s.keys.length - 1;
+        for (int i = s.home(number); ; i = (i + 1) & mask) {
+            int k = (int) KEY.getAcquire(s.keys, i);
+            if (k == number) return s.accounts[i];
+            if (k == 0)      return null;
+        }
+    }
+
+    public boolean contains(int number) {
+        return get(number) != null;
+    }
+
+    // Add acc under acc.number (replacing any account already there)
+    public synchronized void put(Account acc) {
+        if (acc.number <= 0) throw new IllegalArgumentException("Invalid account number: " + acc.number);
+        Slots s = slots;
+        if ((size + 1) * 2 > s.keys.length) {
+            s = grow(s);
+            slots = s; // publish the bigger table
+        }
+        int mask = s.keys.length - 1;
+        int i = s.home(acc.number);
+        while (s.keys[i] != 0 && s.keys[i] != acc.number) i = (i + 1) & mask;
+        boolean added = s.keys[i] == 0;
+        s.accounts[i] = acc;
+        KEY.setRelease(s.keys, i, acc.number); // the key last: now lookups can see it
+        if (added) size++;
+    }
+
+    // Nobody can see n until it is published, so plain writes will do
+    private static Slots grow(Slots old) {
+        Slots n = new Slots(old.keys.length * 2);
+        int mask = n.keys.length - 1;
+        for (int j = 0; j < old.keys.length; j++) {
+            int key = old.keys[j];
+            if (key == 0) continue;
+            int i = n.home(key);
+            while (n.keys[i] != 0) i = (i + 1) & mask;
+            n.keys[i]     = key;
+            n.accounts[i] = old.accounts[j];
+        }
+        return n;
+    }
+
+    // Drop every account that matches; returns how many went — O(capacity)
+    public synchronized int removeIf(Predicate<Account> which) {
+        Slots old = slots;
+        int keep = 0;
+        for (int j = 0; j < old.keys.length; j++) {
+            if (old.keys[j] != 0 && !which.test(old.accounts[j])) keep++;
+        }
+        if (keep == size) return 0;
+        int capacity = 64;
+        while (keep * 2 > capacity) capacity *= 2;
+        Slots n = new Slots(capacity);
+        int mask = n.keys.length - 1;
+        for (int j = 0; j < old.keys.length; j++) {
+            int key = old.keys[j];
+            if (key == 0 || which.test(old.accounts[j])) continue;
+            int i = n.home(key);
+            while (n.keys[i] != 0) i = (i + 1) & mask;
+            n.keys[i]     = key;
+            n.accounts[i] = old.accounts[j];
+        }
+        int removed = size - keep;
+        slots = n; // publish the smaller table
+        size  = keep;
+        return removed;
+    }
+
+    // Every account, in table order (not sorted — see AccountBST for that)
+    public void forEach(Consumer<Account> action) {
+        Slots s = slots;
+        for (int i = 0; i < s.keys.length; i++) {
+            if ((int) KEY.getAcquire(s.keys, i) != 0) action.accept(s.accounts[i]);
+        }
+    }
+
+    public int size()        { return size; }
+    public boolean isEmpty() { return size == 0; }
+}
@@ -1,140 +1,1025 @@
 package bank;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 /*
  * Bank.java — the core of the system.
  *
  * It uses three DSA structures:
- *   1. HashMap        — stores all accounts for fast O(1) lookup by account number
- *   2. AccountBST     — stores accounts in a BST for sorted listing and search
- *   3. TransactionList— a linked list per account storing transaction history
- *   4. UndoStack      — a stack that lets us undo the last transaction
+ *   1. AccountTable   — an int-keyed hash table: account number → account,
+ *                       which carries its own history and undo stack
+ *   2. AccountBST     — stores accounts in an AVL tree for sorted listing and range scans
+ *   3. NameIndex      — an inverted trigram index for name search
+ *   4. TransactionList— a columnar, chunked history per account (notes in a
+ *                       shared NoteArena)
+ *   5. UndoStack      — bounded stacks that let us undo recent transactions
+ *                       (one shared by all accounts, plus one per account)
+ *   6. BankStats      — running totals, so /api/stats never walks the accounts
+ *
+ * Durability:
+ *   With a Journal, every change is appended to it while the account is
+ *   still locked (so the journal order matches the order changes were
+ *   made), and the caller then waits for it to reach disk with the lock
+ *   released, so one fsync can cover many concurrent requests.
  *
  * All business logic (create account, deposit, withdraw, transfer) lives here.
+ *
+ * Thread safety:
+ *   The server runs requests on many threads at once, so every method here
+ *   may be called concurrently. Account and transaction numbers come from
+ *   atomic counters, AccountTable lookups need no lock, and anything that
+ *   changes an account's balance or history runs under that account's
+ *   stripe lock (see StripedLocks) — or, in engine mode, on the single
+ *   writer thread of a LedgerEngine, with no locks at all.
+ *
+ * Sharding:
+ *   A Bank built with Partitions is one shard of a bigger bank: it holds
+ *   only the partitions it owns, every change passes their gate first,
+ *   and whole partitions can be exported, imported and dropped while
+ *   requests keep running (see Partitions and Router).
  */
 public class Bank {
 
-    // HashMap: accountNumber -> Account  (O(1) lookup)
-    private HashMap<String, Account> accounts = new HashMap<>();
+    // Account number -> Account (O(1) lookup, see AccountTable)
+    private final AccountTable accounts = new AccountTable();
+
+    // AVL tree: for sorted listing and range scans
+    private final AccountBST bst = new AccountBST();
+
+    // Trigram index: for name search
+    private final NameIndex names = new NameIndex();
+
+    // Every transaction note, stored once (see NoteArena)
+    private final NoteArena notes = new NoteArena();
+
+    // Most operations one applyBatch call accepts
+    static final int MAX_BATCH = 10_000;
+
+    // Longest name, email, type or note, in UTF-8 bytes: the journal and
+    // the snapshot store a text's length in two bytes
+    static final int MAX_TEXT = 0xFFFF;
+
+    // How many recent transactions can be undone
+    static final int UNDO_LIMIT         = 1000; // across the whole bank
+    static final int ACCOUNT_UNDO_LIMIT = 20;   // per account
+
+    // Undo stack (shared across all accounts). Each account also has its
+    // own (Account.undo), so undoing on one account never has to look at the others.
+    private final UndoStack undoStack = new UndoStack(UNDO_LIMIT);
+
+    // Running totals for /api/stats — updated by every change below
+    private final BankStats stats = new BankStats();
+
+    // Nanoseconds per change, by operation (see Metrics)
+    private final Map<String, Histogram> timings = newTimings("create", "deposit", "withdraw", "transfer", "batch", "undo");
+
+    // Per-account locks — see StripedLocks for why we stripe
+    private final StripedLocks locks = new StripedLocks(64);
 
-    // BST: for sorted listing and name search
-    private AccountBST bst = new AccountBST();
+    private final AtomicInteger accountCounter = new AtomicInteger(1000);
+    private final AtomicLong    txCounter      = new AtomicLong(1);
 
-    // Per-account transaction history (one LinkedList per account)
-    private HashMap<String, TransactionList> history = new HashMap<>();
+    // Single-writer engine — null in the default, locked mode
+    private volatile LedgerEngine engine;
 
-    // Undo stack (shared across all accounts)
-    private UndoStack undoStack = new UndoStack();
+    // Told about every change once it is committed — null when nobody listens
+    private volatile Listener listener;
 
-    private int accountCounter = 1000;
-    private int txCounter      = 1;
+    // The partitions this shard owns — null when it is the whole bank
+    private final Partitions partitions;
 
-    // ── Seed some demo data on startup ───────────────────────────────────────
+    // Write-ahead journal — null when running in memory only
+    private Journal journal;
+    private Path    dataDir;
+    private long    snapshotAt; // journal records appended when the last snapshot started
+
+    // ── In memory only, seeded with demo data ────────────────────────────────
     public Bank() {
-        createAccount("Alice Johnson",  "alice@email.com",  5000, "SAVINGS");
-        createAccount("Bob Smith",      "bob@email.com",    8500, "CURRENT");
-        createAccount("Carol Williams", "carol@email.com", 12000, "SAVINGS");
-        createAccount("David Brown",    "david@email.com",  3200, "CURRENT");
+        this((Partitions) null);
+    }
+
+    // A shard starts empty: the router numbers every account it opens
+    public Bank(Partitions shard) {
+        partitions = shard;
+        if (shard == null) seedDemoData();
+    }
+
+    // ── Backed by a journal on disk ──────────────────────────────────────────
+    // Loads the latest snapshot in dir (if any), then replays the journal
+    // written after it. Only a brand-new journal gets the demo data.
+    public Bank(Path dir, long maxBatchMicros) throws IOException {
+        this(dir, maxBatchMicros, null);
+    }
+
+    // As a shard, accounts of partitions it no longer owns are dropped once
+    // loaded: they are left over from a move whose drop never got saved.
+    public Bank(Path dir, long maxBatchMicros, Partitions shard) throws IOException {
+        dataDir = dir;
+        java.nio.file.Files.createDirectories(dir);
+        long fromGen = Snapshot.load(dir, this);
+        if (fromGen > 0) rebuildUndoStacks();
+        journal = Journal.open(dir, fromGen, maxBatchMicros, new JournalReplayer());
+        partitions = shard;
+        if (shard != null) removeAccounts(a -> !shard.ownsAccount(a.number));
+        else if (accounts.isEmpty()) seedDemoData();
+    }
+
+    private void seedDemoData() {
+        createAccount("Alice Johnson",  "alice@email.com",  5000_00, "SAVINGS");
+        createAccount("Bob Smith",      "bob@email.com",    8500_00, "CURRENT");
+        createAccount("Carol Williams", "carol@email.com", 12000_00, "SAVINGS");
+        createAccount("David Brown",    "david@email.com",  3200_00, "CURRENT");
 
         // Add a few transactions so history isn't empty
-        deposit("ACC1001", 2000, "Initial top-up");
-        withdraw("ACC1002", 500, "ATM withdrawal");
-        deposit("ACC1003", 1500, "Salary credit");
+        deposit(1001, 2000_00, "Initial top-up");
+        withdraw(1002, 500_00, "ATM withdrawal");
+        deposit(1003, 1500_00, "Salary credit");
+    }
+
+    public boolean isJournaled() { return journal != null; }
+
+    // ── Change feed ──────────────────────────────────────────────────────────
+    /*
+     * Called on the request's thread after a change is committed (and, with
+     * a journal, on disk), never under a lock, so a slow listener delays
+     * only that request. kind is deposit, withdraw, transfer, batch or
+     * undo; txs are the transactions it made (for an undo, the REVERSALs).
+     * See EventHub.
+     */
+    interface Listener {
+        void accountOpened(Account acc);
+        void committed(String kind, List<Transaction> txs);
+    }
+
+    public void setListener(Listener l) { listener = l; }
+
+    private void opened(Account acc) {
+        Listener l = listener;
+        if (l != null) l.accountOpened(acc);
+    }
+
+    private void committed(String kind, List<Transaction> txs) {
+        Listener l = listener;
+        if (l != null && !txs.isEmpty()) l.committed(kind, txs);
+    }
+
+    // Stop the engine (if any), then flush and close the journal
+    public void close() throws IOException {
+        if (engine != null) engine.stop();
+        if (journal != null) journal.close();
+    }
+
+    // ── Execution mode ───────────────────────────────────────────────────────
+    /*
+     * Locked (default): each change runs on the request's own thread with
+     * its accounts' stripes locked, then waits for its journal records.
+     *
+     * Engine: every change is handed to a LedgerEngine and run by its single
+     * writer thread, in order, without locks. Call once, after loading and
+     * before serving requests.
+     */
+    public void startEngine(int ringSize) {
+        if (engine != null) throw new IllegalStateException("Engine already started.");
+        engine = new LedgerEngine(journal, ringSize);
+    }
+
+    public boolean isEngineMode() { return engine != null; }
+
+    // Run m under the given stripes (or on the engine's writer), then wait
+    // until what it journaled is on disk. The whole wait is timed as op.
+    // On a shard it first passes the gate of the partitions in parts.
+    // Once the journal has failed, nothing changes: memory would get ahead
+    // of a file that can no longer catch up.
+    private <T> T mutate(String op, long parts, boolean[] stripes, LedgerEngine.Command<T> m) {
+        if (journal != null) journal.checkWritable();
+        Partitions gate = partitions;
+        if (gate != null) gate.enter(parts);
+        long start = System.nanoTime();
+        try {
+            if (engine != null) return engine.call(m);
+
+            T result;
+            long seq;
+            locks.lockAll(stripes);
+            try {
+                result = m.run();
+                // Our records are at or before this; waiting for it covers them
+                seq = journal == null ? 0 : journal.appended();
+            } finally {
+                locks.unlockAll(stripes);
+            }
+            awaitDurable(seq); // outside the lock, so one fsync can cover many requests
+            return result;
+        } finally {
+            timings.get(op).record(System.nanoTime() - start);
+            if (gate != null) gate.exit(parts);
+        }
+    }
+
+    // The partition bits of these accounts (0 when this isn't a shard)
+    private long parts(int... accNos) {
+        if (partitions == null) return 0;
+        long mask = 0;
+        for (int a : accNos) mask |= Partitions.bit(a);
+        return mask;
+    }
+
+    private boolean[] stripes(int... accNos) {
+        boolean[] held = new boolean[locks.stripes()];
+        for (int a : accNos) held[locks.stripeFor(a)] = true;
+        return held;
     }
 
     // ── Create Account ───────────────────────────────────────────────────────
-    public Account createAccount(String name, String email, double initialDeposit, String type) {
-        String accNum = "ACC" + (++accountCounter);
-        Account acc   = new Account(accNum, name, email, initialDeposit, type);
+    public Account createAccount(String name, String email, long initialDeposit, String type) {
+        if (initialDeposit < 0) throw new RuntimeException("Opening balance cannot be negative.");
+        if (partitions != null) throw new RuntimeException("A shard only opens accounts numbered by the router.");
+        return open(accountCounter.incrementAndGet(), name, email, initialDeposit, type);
+    }
 
-        accounts.put(accNum, acc);   // add to HashMap
-        bst.insert(acc);             // add to BST
-        history.put(accNum, new TransactionList()); // create empty linked list
+    // On a shard: open an account under the number the router picked
+    public Account createAccount(int accNo, String name, String email, long initialDeposit, String type) {
+        if (initialDeposit < 0) throw new RuntimeException("Opening balance cannot be negative.");
+        if (partitions == null) throw new RuntimeException("Account numbers are chosen by the bank.");
+        if (accNo <= 0)         throw new RuntimeException("Invalid account number.");
+        Account acc = open(accNo, name, email, initialDeposit, type);
+        accountCounter.accumulateAndGet(accNo, Math::max);
+        return acc;
+    }
+
+    private Account open(int accNo, String name, String email, long initialDeposit, String type) {
+        if (tooLong(name))  throw new RuntimeException("Name is too long.");
+        if (tooLong(email)) throw new RuntimeException("Email is too long.");
+        if (tooLong(type))  throw new RuntimeException("Account type is too long.");
+        Account created = mutate("create", parts(accNo), stripes(accNo), () -> {
+            if (accounts.contains(accNo)) throw new RuntimeException("Account ACC" + accNo + " already exists.");
+            long txNo = txCounter.getAndIncrement();
+            long ts   = System.currentTimeMillis();
+            Account acc = openAccount(accNo, name, email, initialDeposit, type, txNo, ts);
+            if (journal != null) journal.appendCreate(accNo, name, email, initialDeposit, type, txNo, ts);
+            return acc;
+        });
+        opened(created);
+        return created;
+    }
+
+    // Build the account and put it in every index. Caller holds its lock.
+    private Account openAccount(int accNo, String name, String email, long initialDeposit,
+                                String type, long txNo, long ts) {
+        Account acc = new Account(accNo, name, email, initialDeposit, type);
 
-        // Record the opening deposit as first transaction
-        String txId = "TX" + (txCounter++);
-        history.get(accNum).add(new Transaction(txId, "DEPOSIT", initialDeposit, initialDeposit, "Account opened"));
+        // History goes in first so nobody can find the account without it
+        acc.history = new TransactionList(acc.accountNumber, notes);
+        acc.history.add(txNo, Transaction.DEPOSIT, initialDeposit, initialDeposit, ts, 0, "Account opened");
+        acc.undo = new UndoStack(ACCOUNT_UNDO_LIMIT);
+        stats.accountOpened(type, initialDeposit);
+        stats.transactionsRecorded(1);
 
+        bst.insert(acc);             // add to BST
+        names.add(acc);              // add to name index
+        accounts.put(acc);           // add to the table — now visible to lookups
         return acc;
     }
 
     // ── Deposit ──────────────────────────────────────────────────────────────
-    public Transaction deposit(String accNum, double amount, String note) {
-        Account acc = getAccount(accNum);
+    public Transaction deposit(int accNo, long amount, String note) {
+        Account acc = getAccount(accNo);
         if (acc == null)    throw new RuntimeException("Account not found.");
         if (amount <= 0)    throw new RuntimeException("Amount must be positive.");
+        if (tooLong(note))  throw new RuntimeException("Note is too long.");
 
-        acc.balance += amount;
-
-        Transaction tx = new Transaction("TX" + (txCounter++), "DEPOSIT", amount, acc.balance, note);
-        history.get(accNum).add(tx); // prepend to linked list
-        undoStack.push(tx);          // push to undo stack
+        Transaction tx = mutate("deposit", parts(accNo), stripes(accNo), () -> {
+            if (!fits(acc.balance, amount)) throw new RuntimeException("Balance limit exceeded.");
+            long txNo = txCounter.getAndIncrement();
+            long ts   = System.currentTimeMillis();
+            int i = applyDeposit(acc, txNo, amount, note, ts);
+            if (journal != null) journal.appendDeposit(accNo, txNo, amount, note, ts);
+            return view(acc, i);
+        });
+        committed("deposit", Collections.singletonList(tx));
         return tx;
     }
 
+    // Returns the new entry's index in acc's history
+    private int applyDeposit(Account acc, long txNo, long amount, String note, long ts) {
+        long after = acc.credit(amount);
+        stats.balanceChanged(acc.type, amount);
+        stats.deposited(amount, ts);
+        return recordUndoable(acc, txNo, Transaction.DEPOSIT, amount, after, note, ts, 0);
+    }
+
     // ── Withdraw ─────────────────────────────────────────────────────────────
-    public Transaction withdraw(String accNum, double amount, String note) {
-        Account acc = getAccount(accNum);
+    public Transaction withdraw(int accNo, long amount, String note) {
+        Account acc = getAccount(accNo);
         if (acc == null)             throw new RuntimeException("Account not found.");
         if (amount <= 0)             throw new RuntimeException("Amount must be positive.");
-        if (acc.balance < amount)    throw new RuntimeException("Insufficient funds.");
+        if (tooLong(note))           throw new RuntimeException("Note is too long.");
 
-        acc.balance -= amount;
+        Transaction tx = mutate("withdraw", parts(accNo), stripes(accNo), () -> {
+            // Check the balance under the lock, or two withdrawals could both pass
+            if (acc.balance < amount) throw new RuntimeException("Insufficient funds.");
 
-        Transaction tx = new Transaction("TX" + (txCounter++), "WITHDRAW", amount, acc.balance, note);
-        history.get(accNum).add(tx); // prepend to linked list
-        undoStack.push(tx);          // push to undo stack
+            long txNo = txCounter.getAndIncrement();
+            long ts   = System.currentTimeMillis();
+            int i = applyWithdraw(acc, txNo, amount, note, ts);
+            if (journal != null) journal.appendWithdraw(accNo, txNo, amount, note, ts);
+            return view(acc, i);
+        });
+        committed("withdraw", Collections.singletonList(tx));
         return tx;
     }
 
+    private int applyWithdraw(Account acc, long txNo, long amount, String note, long ts) {
+        long after = acc.tryDebit(amount);
+        if (after < 0) throw new RuntimeException("Insufficient funds.");
+        stats.balanceChanged(acc.type, -amount);
+        stats.withdrew(amount, ts);
+        return recordUndoable(acc, txNo, Transaction.WITHDRAW, amount, after, note, ts, 0);
+    }
+
+    // ── Transfer ─────────────────────────────────────────────────────────────
+    /*
+     * Move money from one account to another as one step. Both accounts'
+     * stripes are locked, lowest first (see StripedLocks.lockAll), so two
+     * transfers going opposite ways between the same accounts can't
+     * deadlock. Writes a TRANSFER_OUT on the sender and a TRANSFER_IN on
+     * the receiver; undoing either one reverses both.
+     *
+     * Returns [TRANSFER_OUT, TRANSFER_IN].
+     */
+    public List<Transaction> transfer(int fromNo, int toNo, long amount, String note) {
+        Account from = getAccount(fromNo);
+        Account to   = getAccount(toNo);
+        if (from == null || to == null) throw new RuntimeException("Account not found.");
+        if (from == to)                 throw new RuntimeException("Cannot transfer to the same account.");
+        if (amount <= 0)                throw new RuntimeException("Amount must be positive.");
+        if (tooLong(note))              throw new RuntimeException("Note is too long.");
+
+        List<Transaction> txs = mutate("transfer", parts(fromNo, toNo), stripes(fromNo, toNo), () -> {
+            if (from.balance < amount) throw new RuntimeException("Insufficient funds.");
+            if (!fits(to.balance, amount)) throw new RuntimeException("Balance limit exceeded.");
+
+            long txNo = txCounter.getAndAdd(2); // OUT gets txNo, IN gets txNo + 1
+            long ts   = System.currentTimeMillis();
+            int out = applyTransferOut(from, to, txNo, amount, note, ts);
+            int in  = applyTransferIn(to, from, txNo + 1, amount, note, ts);
+            if (journal != null) journal.appendTransfer(fromNo, toNo, txNo, amount, note, ts);
+            return java.util.Arrays.asList(view(from, out), view(to, in));
+        });
+        committed("transfer", txs);
+        return txs;
+    }
+
+    // The sender's half. Goes on the shared undo stack and the sender's.
+    private int applyTransferOut(Account from, Account to, long txNo, long amount, String note, long ts) {
+        long after = from.tryDebit(amount);
+        if (after < 0) throw new RuntimeException("Insufficient funds.");
+        stats.balanceChanged(from.type, -amount);
+        return recordUndoable(from, txNo, Transaction.TRANSFER_OUT, amount, after, note, ts, to.number);
+    }
+
+    // The receiver's half. Only on the receiver's undo stack — the shared
+    // stack holds one entry per transfer.
+    private int applyTransferIn(Account to, Account from, long txNo, long amount, String note, long ts) {
+        long after = to.credit(amount);
+        stats.balanceChanged(to.type, amount);
+
+        int i = to.history.add(txNo, Transaction.TRANSFER_IN, amount, after, ts, from.number, note);
+        to.undo.push(to.number, txNo);
+        stats.transactionsRecorded(1);
+        return i;
+    }
+
+    // Where the other half of the transfer at acc's entry i is, in other's history
+    private static int pairIndex(Account acc, int i, Account other) {
+        long n = acc.history.txNo(i);
+        return other.history.indexOf(acc.history.type(i) == Transaction.TRANSFER_OUT ? n + 1 : n - 1);
+    }
+
+    // The account on the other side of the transfer at acc's entry i
+    private Account counterpartyOf(Account acc, int i) {
+        return accounts.get((int) acc.history.ref(i));
+    }
+
+    // The stripes an undo of acc's entry i has to hold
+    private boolean[] stripesOf(Account acc, int i) {
+        return Transaction.isTransfer(acc.history.type(i))
+            ? stripes(acc.number, (int) acc.history.ref(i))
+            : stripes(acc.number);
+    }
+
+    private long partsOf(Account acc, int i) {
+        return Transaction.isTransfer(acc.history.type(i))
+            ? parts(acc.number, (int) acc.history.ref(i))
+            : parts(acc.number);
+    }
+
+    // The API's copy of entry i of acc's history
+    private static Transaction view(Account acc, int i) {
+        return acc.history.get(i);
+    }
+
+    // ── Batch ────────────────────────────────────────────────────────────────
+    /*
+     * Apply many deposits, withdrawals and transfers as one unit — either
+     * all of them happen or none do. Returns the transactions made, in
+     * order (a transfer makes two).
+     *
+     *   1. Find every account, then lock the stripes they hash to, lowest
+     *      first (see StripedLocks.lockAll) — one lock round for the batch.
+     *   2. Check every operation against a running balance per account, so
+     *      a withdrawal may spend a deposit made earlier in the same batch.
+     *      Nothing has changed yet, so a failure just throws.
+     *   3. Journal the whole batch as ONE record, then apply it (it can no
+     *      longer fail).
+     *   4. Unlock and wait for a single fsync.
+     */
+    public List<Transaction> applyBatch(List<BatchOp> ops) {
+        if (ops.isEmpty()) return Collections.emptyList();
+        if (ops.size() > MAX_BATCH) throw new RuntimeException("A batch can have at most " + MAX_BATCH + " operations.");
+
+        Account[] accs   = new Account[ops.size()];
+        Account[] tos    = new Account[ops.size()];
+        boolean[] held   = new boolean[locks.stripes()];
+        long      parts  = 0;
+        int       txCount = 0;
+        for (int i = 0; i < ops.size(); i++) {
+            BatchOp op = ops.get(i);
+            boolean isTransfer = "TRANSFER".equals(op.type);
+            if (!isTransfer && !"DEPOSIT".equals(op.type) && !"WITHDRAW".equals(op.type)) {
+                throw batchError(i, "Unknown operation type " + op.type + ".");
+            }
+            accs[i] = getAccount(op.account);
+            if (accs[i] == null) throw batchError(i, "Account not found.");
+            if (op.amount <= 0)  throw batchError(i, "Amount must be positive.");
+            if (tooLong(op.note)) throw batchError(i, "Note is too long.");
+            held[locks.stripeFor(op.account)] = true;
+            parts |= parts(op.account);
+            txCount++;
+
+            if (isTransfer) {
+                tos[i] = getAccount(op.to);
+                if (tos[i] == null)    throw batchError(i, "Account not found.");
+                if (tos[i] == accs[i]) throw batchError(i, "Cannot transfer to the same account.");
+                held[locks.stripeFor(op.to)] = true;
+                parts |= parts(op.to);
+                txCount++;
+            }
+        }
+
+        int total = txCount;
+        List<Transaction> txs = mutate("batch", parts, held, () -> {
+            Map<Account, Long> balances = new HashMap<>();
+            for (int i = 0; i < ops.size(); i++) {
+                BatchOp op = ops.get(i);
+                long bal = balances.getOrDefault(accs[i], accs[i].balance);
+                if ("DEPOSIT".equals(op.type)) {
+                    if (!fits(bal, op.amount)) throw batchError(i, "Balance limit exceeded.");
+                    bal += op.amount;
+                } else {
+                    if (bal < op.amount) throw batchError(i, "Insufficient funds.");
+                    bal -= op.amount;
+                }
+                balances.put(accs[i], bal);
+                if (tos[i] != null) {
+                    long to = balances.getOrDefault(tos[i], tos[i].balance);
+                    if (!fits(to, op.amount)) throw batchError(i, "Balance limit exceeded.");
+                    balances.put(tos[i], to + op.amount);
+                }
+            }
+
+            long txNo = txCounter.getAndAdd(total);
+            long ts   = System.currentTimeMillis();
+            if (journal != null) journal.appendBatch(ops, txNo, ts);
+            List<Transaction> done = new ArrayList<>(total);
+            for (int i = 0; i < ops.size(); i++) {
+                BatchOp op = ops.get(i);
+                if ("DEPOSIT".equals(op.type)) {
+                    done.add(view(accs[i], applyDeposit(accs[i], txNo++, op.amount, op.note, ts)));
+                } else if ("WITHDRAW".equals(op.type)) {
+                    done.add(view(accs[i], applyWithdraw(accs[i], txNo++, op.amount, op.note, ts)));
+                } else {
+                    done.add(view(accs[i], applyTransferOut(accs[i], tos[i], txNo++, op.amount, op.note, ts)));
+                    done.add(view(tos[i], applyTransferIn(tos[i], accs[i], txNo++, op.amount, op.note, ts)));
+                }
+            }
+            return done;
+        });
+        committed("batch", txs);
+        return txs;
+    }
+
+    private static RuntimeException batchError(int index, String msg) {
+        return new RuntimeException("Operation " + index + ": " + msg);
+    }
+
+    // Can balance take amount (> 0) more without passing Long.MAX_VALUE?
+    // Amounts of up to 15 digits of rupees are accepted, so a few dozen
+    // of the largest deposits could otherwise overflow one account.
+    static boolean fits(long balance, long amount) {
+        return balance <= Long.MAX_VALUE - amount;
+    }
+
+    // Checked before anything is locked or changed: a text the journal
+    // can't hold must be refused up front, not half way through a change.
+    // A char is at most 3 UTF-8 bytes, so short texts need no encoding.
+    static boolean tooLong(String s) {
+        return s != null && s.length() > MAX_TEXT / 3
+            && s.getBytes(StandardCharsets.UTF_8).length > MAX_TEXT;
+    }
+
+    // Append to acc's history and push on both undo stacks; returns the index
+    private int recordUndoable(Account acc, long txNo, byte type, long amount, long after, String note, long ts, long ref) {
+        int i = acc.history.add(txNo, type, amount, after, ts, ref, note);
+        undoStack.push(acc.number, txNo); // push to the shared undo stack
+        acc.undo.push(acc.number, txNo);  // and to this account's
+        stats.transactionsRecorded(1);
+        return i;
+    }
+
     // ── Undo Last Transaction ────────────────────────────────────────────────
+    // A transaction sits on two stacks (shared and per-account). Whichever
+    // undo reaches it first reverses it and marks it; the other stack just
+    // skips it when popped.
     public String undo() {
-        Transaction tx = undoStack.pop(); // pop from stack
-        if (tx == null) return "Nothing to undo.";
-
-        // Find which account this transaction belongs to
-        for (Account acc : accounts.values()) {
-            List<Transaction> txList = history.get(acc.accountNumber).getAll();
-            if (!txList.isEmpty() && txList.get(0).id.equals(tx.id)) {
-                // Reverse the transaction
-                if (tx.type.equals("DEPOSIT"))  acc.balance -= tx.amount;
-                if (tx.type.equals("WITHDRAW")) acc.balance += tx.amount;
-                return "Undid " + tx.type + " of " + tx.amount + " on " + acc.accountNumber;
+        if (partitions != null) throw new RuntimeException("On a shard, undo needs an account: POST /api/accounts/{id}/undo.");
+        while (true) {
+            UndoStack.Entry e = undoStack.pop(); // pop from stack
+            if (e == null) return "Nothing to undo.";
+            Account acc = accounts.get(e.accNo);
+            int i = acc.history.indexOf(e.txNo);
+            if (acc.history.isReversed(i)) continue; // already undone per-account
+
+            // a transfer needs both accounts' stripes
+            List<Transaction> done = mutate("undo", partsOf(acc, i), stripesOf(acc, i), () -> undoLocked(acc, i, e, undoStack));
+            if (done != null) return undone(acc, i, done);
+        }
+    }
+
+    // ── Undo Last Transaction on one account ─────────────────────────────────
+    public String undo(int accNo) {
+        Account acc = getAccount(accNo);
+        if (acc == null) throw new RuntimeException("Account not found.");
+
+        while (true) {
+            UndoStack.Entry e = acc.undo.pop();
+            if (e == null) return "Nothing to undo on " + acc.accountNumber + ".";
+            int i = acc.history.indexOf(e.txNo);
+            if (acc.history.isReversed(i)) continue; // already undone through /api/undo
+            if (Transaction.isTransfer(acc.history.type(i)) && counterpartyOf(acc, i) == null) {
+                acc.undo.push(e.accNo, e.txNo);
+                throw new RuntimeException("Cannot undo: ACC" + acc.history.ref(i) + " is now on another shard.");
+            }
+
+            List<Transaction> done = mutate("undo", partsOf(acc, i), stripesOf(acc, i), () -> undoLocked(acc, i, e, acc.undo));
+            if (done != null) return undone(acc, i, done);
+        }
+    }
+
+    // Tell listeners about the REVERSALs, and the caller what was undone
+    private String undone(Account acc, int i, List<Transaction> reversals) {
+        committed("undo", reversals);
+        return undoMessage(view(acc, i));
+    }
+
+    private static String undoMessage(Transaction tx) {
+        if (tx.counterparty == null) {
+            return "Undid " + tx.type + " of " + Money.format(tx.amount) + " on " + tx.accountNumber;
+        }
+        boolean out = "TRANSFER_OUT".equals(tx.type);
+        return "Undid TRANSFER of " + Money.format(tx.amount) +
+               " from " + (out ? tx.accountNumber : tx.counterparty) +
+               " to "   + (out ? tx.counterparty : tx.accountNumber);
+    }
+
+    // Reverse acc's entry i and journal it; if it can't be reversed, put e
+    // back on stack. Returns the REVERSALs made, or null if another undo
+    // got to it first.
+    private List<Transaction> undoLocked(Account acc, int i, UndoStack.Entry e, UndoStack stack) {
+        if (acc.history.isReversed(i)) return null;
+        long revNo = txCounter.getAndAdd(Transaction.isTransfer(acc.history.type(i)) ? 2 : 1);
+        long ts    = System.currentTimeMillis();
+        List<Transaction> reversals;
+        try {
+            reversals = reverse(acc, i, revNo, ts);
+        } catch (RuntimeException ex) {
+            stack.push(e.accNo, e.txNo); // leave it undoable
+            throw ex;
+        }
+        if (journal != null) journal.appendUndo(e.accNo, e.txNo, revNo, ts);
+        return reversals;
+    }
+
+    // Cancel acc's entry i by recording REVERSAL entries — O(1).
+    // A transfer is reversed as a pair: the OUT half gets reversal number
+    // revNo and the IN half revNo + 1, whichever half we were given.
+    // The caller holds the lock of every account involved. Returns the
+    // REVERSALs, in number order.
+    private List<Transaction> reverse(Account acc, int i, long revNo, long ts) {
+        if (!Transaction.isTransfer(acc.history.type(i))) {
+            return Collections.singletonList(view(acc, reverseOne(acc, i, revNo, ts)));
+        }
+        Account other = counterpartyOf(acc, i);
+        int j = pairIndex(acc, i, other);
+        boolean isOut = acc.history.type(i) == Transaction.TRANSFER_OUT;
+        Account sender = isOut ? acc : other, receiver = isOut ? other : acc;
+        // checked before either half changes, so a failure leaves both as they were
+        if (!fits(sender.balance, acc.history.amount(i))) throw new RuntimeException("Cannot undo: balance limit exceeded.");
+        // first the receiver: it may not have the money any more
+        int in  = reverseOne(receiver, isOut ? j : i, revNo + 1, ts);
+        // giving it back to the sender can't fail
+        int out = reverseOne(sender, isOut ? i : j, revNo, ts);
+        return java.util.Arrays.asList(view(sender, out), view(receiver, in));
+    }
+
+    // Returns the REVERSAL's index in acc's history
+    private int reverseOne(Account acc, int i, long revNo, long ts) {
+        TransactionList list = acc.history;
+        byte    type   = list.type(i);
+        long    amount = list.amount(i);
+        long    txNo   = list.txNo(i);
+        boolean wasCredit = type == Transaction.DEPOSIT || type == Transaction.TRANSFER_IN;
+        long after;
+        if (wasCredit) {
+            after = acc.tryDebit(amount);
+            if (after < 0) throw new RuntimeException("Cannot undo: insufficient funds.");
+        } else {
+            after = acc.credit(amount);
+        }
+        stats.balanceChanged(acc.type, wasCredit ? -amount : amount);
+        stats.transactionsRecorded(1);
+        list.markReversed(i);
+        return list.add(revNo, Transaction.REVERSAL, amount, after, ts, txNo, "Undo of TX" + txNo);
+    }
+
+    // ── Snapshots ────────────────────────────────────────────────────────────
+    // Write every account to a snapshot while requests keep running, then
+    // delete the journal segments it replaces. One snapshot at a time.
+    public synchronized void snapshot() throws IOException {
+        if (journal == null) throw new IllegalStateException("Snapshots need a journal.");
+        snapshotAt = journal.appended();
+        long gen = journal.rotate();
+        Snapshot.write(dataDir, gen, this);
+        journal.deleteSegmentsBefore(gen);
+    }
+
+    // Snapshot only if something was journaled since the last one
+    public synchronized boolean snapshotIfChanged() throws IOException {
+        if (journal == null || journal.appended() == snapshotAt) return false;
+        snapshot();
+        return true;
+    }
+
+    // Copy what the snapshot needs from each account under its lock (or,
+    // in engine mode, on the writer thread — one hand-off per page)
+    List<Snapshot.AccountState> captureForSnapshot(List<Account> page) {
+        if (engine != null) return engine.call(() -> capture(page));
+        List<Snapshot.AccountState> states = new ArrayList<>(page.size());
+        for (Account acc : page) {
+            ReentrantLock lock = locks.lockFor(acc.number);
+            lock.lock();
+            try {
+                states.add(capture(acc));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return states;
+    }
+
+    private List<Snapshot.AccountState> capture(List<Account> page) {
+        List<Snapshot.AccountState> states = new ArrayList<>(page.size());
+        for (Account acc : page) states.add(capture(acc));
+        return states;
+    }
+
+    private Snapshot.AccountState capture(Account acc) {
+        Snapshot.AccountState st = new Snapshot.AccountState();
+        st.account = acc;
+        st.balance = acc.balance;
+        st.history = acc.history;
+        st.txCount = st.history.size();
+        return st;
+    }
+
+    // An empty history for an account being loaded from a snapshot
+    TransactionList newHistory(Account acc) {
+        return new TransactionList(acc.accountNumber, notes);
+    }
+
+    // Put an account loaded from a snapshot back, with its history
+    void restoreAccount(Account acc, TransactionList list) {
+        acc.history = list;
+        acc.undo    = new UndoStack(ACCOUNT_UNDO_LIMIT);
+        stats.accountOpened(acc.type, acc.balance);
+        stats.transactionsRecorded(list.size());
+        bst.insert(acc);
+        names.add(acc);
+        accounts.put(acc);
+    }
+
+    void restoreCounters(int accCounter, long nextTxNo) {
+        accountCounter.accumulateAndGet(accCounter, Math::max);
+        txCounter.accumulateAndGet(nextTxNo, Math::max);
+    }
+
+    int  accountCounterValue() { return accountCounter.get(); }
+    long txCounterValue()      { return txCounter.get(); }
+
+    // Snapshots don't store the undo stacks; refill them with the most
+    // recent transactions that can still be undone.
+    private void rebuildUndoStacks() {
+        // Newest UNDO_LIMIT undoable transactions bank-wide, via a min-heap on tx number
+        java.util.PriorityQueue<UndoStack.Entry> newest = new java.util.PriorityQueue<>(
+            (a, b) -> Long.compare(a.txNo, b.txNo));
+
+        accounts.forEach(acc -> refillUndo(acc, newest));
+        while (!newest.isEmpty()) {
+            UndoStack.Entry t = newest.poll(); // oldest first
+            undoStack.push(t.accNo, t.txNo);
+        }
+    }
+
+    // Refill acc's own undo stack; offer its entries to newest unless null
+    private void refillUndo(Account acc, java.util.PriorityQueue<UndoStack.Entry> newest) {
+        TransactionList list = acc.history;
+
+        // Walk back from the newest until the account's window is full
+        // (entry 0 is the opening deposit, which is never undoable)
+        int from = list.size();
+        int found = 0;
+        while (from > 1 && found < ACCOUNT_UNDO_LIMIT) {
+            if (isUndoable(list, --from)) found++;
+        }
+        for (int i = from; i < list.size(); i++) {
+            if (!isUndoable(list, i)) continue;
+            acc.undo.push(acc.number, list.txNo(i));
+            if (newest == null || list.type(i) == Transaction.TRANSFER_IN) continue; // the shared stack holds the OUT half
+            newest.add(new UndoStack.Entry(acc.number, list.txNo(i)));
+            if (newest.size() > UNDO_LIMIT) newest.poll();
+        }
+    }
+
+    private static boolean isUndoable(TransactionList list, int i) {
+        return !list.isReversed(i) && list.type(i) != Transaction.REVERSAL;
+    }
+
+    // ── Moving partitions (shards only) ──────────────────────────────────────
+    /*
+     * How a partition moves from shard A to shard B (the Router drives it):
+     *
+     *   A: freeze        writes to it get 503, reads carry on
+     *   A: export  ───►  B: import   accounts + histories, snapshot format;
+     *                                B saves them, then claims the
+     *                                partition at epoch + 1
+     *   A: drop          the accounts are removed from every index
+     *
+     * A crash in between leaves at most a stale copy: the lower epoch loses
+     * and is dropped later. Imports and drops are synchronized with
+     * snapshot(), so a snapshot never sees a partition half there.
+     */
+
+    Partitions partitions() {
+        return partitions;
+    }
+
+    // Stream partition part's accounts to out. Freeze it first, or the copy
+    // could miss changes made while it is being written.
+    public void exportPartition(int part, OutputStream out) throws IOException {
+        Partitions p = shardPartitions();
+        if (!p.isFrozen(part)) throw new RuntimeException("Freeze partition " + part + " before exporting it.");
+        Snapshot.export(out, this, n -> Partitions.of(n) == part);
+    }
+
+    // Load partition part as exported by another shard, then own it at
+    // epoch. Returns how many accounts came in.
+    public synchronized int importPartition(int part, long epoch, InputStream in) throws IOException {
+        Partitions p = shardPartitions();
+        if (p.owns(part)) throw new RuntimeException("Partition " + part + " is already on this shard.");
+        Predicate<Account> inPart = a -> Partitions.of(a.number) == part;
+        removeAccounts(inPart); // left by an earlier attempt that failed
+
+        Path tmp = dataDir != null ? dataDir.resolve("import-" + part + ".tmp")
+                                   : Files.createTempFile("bank-import-" + part + "-", ".tmp");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Snapshot.loadFile(tmp, this, n -> Partitions.of(n) == part);
+        } catch (IOException | RuntimeException e) {
+            removeAccounts(inPart);
+            throw e;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        List<Account> arrived = new ArrayList<>();
+        accounts.forEach(a -> { if (inPart.test(a)) arrived.add(a); });
+        for (Account a : arrived) refillUndo(a, null);
+        if (journal != null) snapshot(); // the journal never saw these accounts
+        p.claim(part, epoch);
+        return arrived.size();
+    }
+
+    // Give partition part up and forget its accounts; returns how many went
+    public synchronized int dropPartition(int part) throws IOException {
+        Partitions p = shardPartitions();
+        if (!p.owns(part)) throw new Partitions.Unavailable(421, part, "Partition " + part + " is not on this shard.");
+        p.release(part);
+        int n = removeAccounts(a -> Partitions.of(a.number) == part);
+        if (journal != null && n > 0) snapshot(); // so a restart doesn't load them again
+        return n;
+    }
+
+    private Partitions shardPartitions() {
+        if (partitions == null) throw new RuntimeException("This server is not a shard.");
+        return partitions;
+    }
+
+    // Take every matching account out of all the indexes. Nothing may be
+    // writing to them: their partitions are frozen, released or not yet owned.
+    private int removeAccounts(Predicate<Account> which) {
+        List<Account> gone = new ArrayList<>();
+        accounts.forEach(a -> { if (which.test(a)) gone.add(a); });
+        if (gone.isEmpty()) return 0;
+
+        accounts.removeIf(which); // lookups stop finding them first
+        names.removeIf(which);
+        for (Account a : gone) {
+            bst.delete(a.accountNumber);
+            stats.accountRemoved(a.type, a.balance);
+            stats.transactionsRecorded(-a.history.size());
+        }
+        return gone.size();
+    }
+
+    // ── Journal helpers ──────────────────────────────────────────────────────
+    private void awaitDurable(long seq) {
+        if (journal != null && seq > 0) journal.await(seq);
+    }
+
+    // "ACC1001" → 1001, parsed once where a request comes in. Anything
+    // else → 0, which is never an account, so it is simply not found.
+    static int accountNo(String accNum) {
+        if (accNum == null || accNum.length() < 4 || accNum.length() > 12 || !accNum.startsWith("ACC")) return 0;
+        long n = 0;
+        for (int i = 3; i < accNum.length(); i++) {
+            char c = accNum.charAt(i);
+            if (c < '0' || c > '9') return 0;
+            n = n * 10 + (c - '0');
+        }
+        return n > Integer.MAX_VALUE ? 0 : (int) n;
+    }
+
+    // Applies journal records on startup, before any request can arrive,
+    // so no locks are needed. Counters are moved past every id we see.
+    //
+    // A record written while a snapshot was being taken may already be in
+    // the snapshot; account histories only ever grow in transaction-number
+    // order, so "the account already has this number" means skip it.
+    private class JournalReplayer implements Journal.Replayer {
+        public void create(int accNo, String name, String email, long initial, String type, long txNo, long ts) {
+            if (!accounts.contains(accNo)) openAccount(accNo, name, email, initial, type, txNo, ts);
+            accountCounter.accumulateAndGet(accNo, Math::max);
+            seen(txNo);
+        }
+
+        public void deposit(int accNo, long txNo, long amount, String note, long ts) {
+            if (!applied(accNo, txNo)) applyDeposit(accounts.get(accNo), txNo, amount, note, ts);
+            seen(txNo);
+        }
+
+        public void withdraw(int accNo, long txNo, long amount, String note, long ts) {
+            if (!applied(accNo, txNo)) applyWithdraw(accounts.get(accNo), txNo, amount, note, ts);
+            seen(txNo);
+        }
+
+        public void transfer(int fromNo, int toNo, long txNo, long amount, String note, long ts) {
+            Account from = accounts.get(fromNo);
+            Account to   = accounts.get(toNo);
+            // A snapshot may hold one half and not the other; check each
+            if (!applied(fromNo, txNo))   applyTransferOut(from, to, txNo, amount, note, ts);
+            if (!applied(toNo, txNo + 1)) applyTransferIn(to, from, txNo + 1, amount, note, ts);
+            seen(txNo + 1);
+        }
+
+        public void undo(int accNo, long txNo, long reversalTxNo, long ts) {
+            Account acc = accounts.get(accNo);
+            int i = acc.history.indexOf(txNo);
+            if (!Transaction.isTransfer(acc.history.type(i))) {
+                seen(reversalTxNo);
+                if (applied(accNo, reversalTxNo)) return;
+                reverseOne(acc, i, reversalTxNo, ts);
+                dropFromStacks(acc, txNo);
+                return;
+            }
+            seen(reversalTxNo + 1);
+            Account other = counterpartyOf(acc, i);
+            int j = pairIndex(acc, i, other);
+            boolean isOut = acc.history.type(i) == Transaction.TRANSFER_OUT;
+            int outNo = isOut ? accNo : other.number, inNo = isOut ? other.number : accNo;
+            if (!applied(inNo, reversalTxNo + 1)) {
+                if (isOut) reverseOne(other, j, reversalTxNo + 1, ts); else reverseOne(acc, i, reversalTxNo + 1, ts);
             }
+            if (!applied(outNo, reversalTxNo)) {
+                if (isOut) reverseOne(acc, i, reversalTxNo, ts);       else reverseOne(other, j, reversalTxNo, ts);
+            }
+            dropFromStacks(acc, txNo);
+            dropFromStacks(other, other.history.txNo(j));
+        }
+
+        // Live undo popped it off one stack; drop it wherever it is on top
+        private void dropFromStacks(Account acc, long txNo) {
+            UndoStack.Entry top = undoStack.peek();
+            if (top != null && top.is(acc.number, txNo)) undoStack.pop();
+            top = acc.undo.peek();
+            if (top != null && top.is(acc.number, txNo)) acc.undo.pop();
+        }
+
+        private boolean applied(int accNo, long txNo) {
+            return accounts.get(accNo).history.lastTxNumber() >= txNo;
+        }
+
+        private void seen(long txNo) {
+            txCounter.accumulateAndGet(txNo + 1, Math::max);
         }
-        return "Could not find account for undo.";
     }
 
     // ── Getters ──────────────────────────────────────────────────────────────
-    public Account getAccount(String accNum) {
-        return accounts.get(accNum); // HashMap lookup — O(1)
+    public Account getAccount(int accNo) {
+        return accounts.get(accNo); // AccountTable lookup — O(1)
     }
 
     public List<Account> getAllAccounts() {
         return bst.getAllSorted(); // BST in-order — sorted by account number
     }
 
+    // Accounts numbered from..to inclusive (either may be null) — O(log n + k)
+    public List<Account> getAccountsInRange(String from, String to, int limit) {
+        return bst.range(from, to, limit);
+    }
+
+    // Up to limit accounts after the given account number (null = from the start)
+    public List<Account> getAccountsAfter(String after, int limit) {
+        return bst.after(after, limit);
+    }
+
     public List<Account> searchByName(String name) {
-        return bst.searchByName(name);
+        return names.search(name, Integer.MAX_VALUE);
     }
 
-    public List<Transaction> getHistory(String accNum) {
-        TransactionList list = history.get(accNum);
-        if (list == null) return Collections.emptyList();
-        return list.getAll(); // traverse linked list
+    public List<Account> searchByName(String name, int limit) {
+        return names.search(name, limit);
     }
 
-    public Map<String, Object> getStats() {
-        List<Account> all = getAllAccounts();
-        double total = all.stream().mapToDouble(a -> a.balance).sum();
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalAccounts", all.size());
-        stats.put("totalBalance",  total);
-        stats.put("undoStackSize", undoStack.size());
+    public List<Transaction> getHistory(int accNo) {
+        Account acc = accounts.get(accNo);
+        if (acc == null) return Collections.emptyList();
+        return acc.history.getAll();
+    }
+
+    // One page of history, newest first — see TransactionList.page
+    public List<Transaction> getHistory(int accNo, long from, long to, String beforeTxId, int limit) {
+        Account acc = accounts.get(accNo);
+        if (acc == null) return Collections.emptyList();
+        return acc.history.page(from, to, beforeTxId, limit);
+    }
+
+    public int getHistorySize(int accNo) {
+        Account acc = accounts.get(accNo);
+        return acc == null ? 0 : acc.history.size();
+    }
+
+    // Running totals — reading them is O(1), see BankStats
+    public Map<String, Histogram> getTimings() {
+        return timings;
+    }
+
+    private static Map<String, Histogram> newTimings(String... ops) {
+        Map<String, Histogram> m = new LinkedHashMap<>();
+        for (String op : ops) m.put(op, new Histogram());
+        return Collections.unmodifiableMap(m);
+    }
+
+    public BankStats getStats() {
         return stats;
     }
+
+    public int getUndoStackSize() {
+        return undoStack.size();
+    }
 }
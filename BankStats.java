@@ -0,0 +1,164 @@
+package bank;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * BankStats — running totals, kept up to date as changes happen.
+ *
+ * Why:
+ *   Adding up every balance on each /api/stats call is O(n). Instead Bank
+ *   tells us about every change as it makes it, and reading a total is
+ *   just reading a counter — O(1).
+ *
+ * LongAdder:
+ *   A single shared counter would make every deposit fight over one
+ *   memory location. A LongAdder spreads the additions over several
+ *   internal cells (one per contending thread, roughly) and only adds the
+ *   cells together when someone reads it. Writers don't block each other
+ *   and readers never block writers.
+ *
+ * Rolling windows:
+ *   Deposits and withdrawals are also counted per time bucket, so we can
+ *   answer "how many in the last minute / last hour". See RollingWindow.
+ */
+public class BankStats {
+
+    private final LongAdder accounts     = new LongAdder();
+    private final LongAdder totalBalance = new LongAdder(); // paise
+    private final LongAdder transactions = new LongAdder();
+
+    // Per account type (SAVINGS, CURRENT, ...)
+    static final class TypeTotals {
+        final LongAdder accounts = new LongAdder();
+        final LongAdder balance  = new LongAdder();
+    }
+    private final Map<String, TypeTotals> byType = new ConcurrentHashMap<>();
+
+    final RollingWindow lastMinute = new RollingWindow(1_000, 60);     // 60 one-second buckets
+    final RollingWindow lastHour   = new RollingWindow(60_000, 60);    // 60 one-minute buckets
+
+    public BankStats() {
+        byType.put("SAVINGS", new TypeTotals());
+        byType.put("CURRENT", new TypeTotals());
+    }
+
+    // ── Called by Bank as it makes changes ───────────────────────────────────
+
+    void accountOpened(String type, long balance) {
+        accounts.increment();
+        TypeTotals t = typeTotals(type);
+        t.accounts.increment();
+        balanceChanged(type, balance);
+    }
+
+    void accountRemoved(String type, long balance) {
+        accounts.decrement();
+        typeTotals(type).accounts.decrement();
+        balanceChanged(type, -balance);
+    }
+
+    void balanceChanged(String type, long delta) {
+        totalBalance.add(delta);
+        typeTotals(type).balance.add(delta);
+    }
+
+    void transactionsRecorded(long n) {
+        transactions.add(n);
+    }
+
+    void deposited(long amount, long ts) {
+        lastMinute.deposit(amount, ts);
+        lastHour.deposit(amount, ts);
+    }
+
+    void withdrew(long amount, long ts) {
+        lastMinute.withdraw(amount, ts);
+        lastHour.withdraw(amount, ts);
+    }
+
+    private TypeTotals typeTotals(String type) {
+        return byType.computeIfAbsent(type == null ? "" : type, k -> new TypeTotals());
+    }
+
+    // ── Reading ──────────────────────────────────────────────────────────────
+
+    public long accounts()     { return accounts.sum(); }
+    public long totalBalance() { return totalBalance.sum(); }
+    public long transactions() { return transactions.sum(); }
+
+    public Map<String, TypeTotals> byType() { return byType; }
+
+    /*
+     * Counts and sums per time bucket, in a ring:
+     *
+     *   bucket = (timestamp / bucketMillis) % buckets
+     *
+     * Each slot holds a Bucket stamped with the period it counts. A writer
+     * that finds a stale stamp swaps in a fresh Bucket with one CAS, so
+     * old counts disappear on their own and no thread ever waits.
+     */
+    static final class RollingWindow {
+        final long bucketMillis;
+        final int  buckets;
+        private final AtomicReferenceArray<Bucket> ring;
+
+        static final class Bucket {
+            final long period;
+            final LongAdder deposits         = new LongAdder();
+            final LongAdder depositAmount    = new LongAdder();
+            final LongAdder withdrawals      = new LongAdder();
+            final LongAdder withdrawalAmount = new LongAdder();
+            Bucket(long period) { this.period = period; }
+        }
+
+        RollingWindow(long bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            this.buckets      = buckets;
+            this.ring         = new AtomicReferenceArray<>(buckets);
+        }
+
+        void deposit(long amount, long ts) {
+            Bucket b = bucketFor(ts);
+            if (b == null) return;
+            b.deposits.increment();
+            b.depositAmount.add(amount);
+        }
+
+        void withdraw(long amount, long ts) {
+            Bucket b = bucketFor(ts);
+            if (b == null) return;
+            b.withdrawals.increment();
+            b.withdrawalAmount.add(amount);
+        }
+
+        private Bucket bucketFor(long ts) {
+            long period = ts / bucketMillis;
+            if (period <= System.currentTimeMillis() / bucketMillis - buckets) return null; // too old (replay)
+            int  slot   = (int) (period % buckets);
+            while (true) {
+                Bucket b = ring.get(slot);
+                if (b != null && b.period == period) return b;
+                if (b != null && b.period > period) return null;             // slot already moved on
+                if (ring.compareAndSet(slot, b, new Bucket(period))) return ring.get(slot);
+            }
+        }
+
+        // {deposits, depositAmount, withdrawals, withdrawalAmount} over the whole window
+        long[] totals() {
+            long now = System.currentTimeMillis() / bucketMillis;
+            long[] t = new long[4];
+            for (int i = 0; i < buckets; i++) {
+                Bucket b = ring.get(i);
+                if (b == null || b.period <= now - buckets) continue;
+                t[0] += b.deposits.sum();
+                t[1] += b.depositAmount.sum();
+                t[2] += b.withdrawals.sum();
+                t[3] += b.withdrawalAmount.sum();
+            }
+            return t;
+        }
+    }
+}
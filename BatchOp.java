@@ -0,0 +1,35 @@
+package bank;
+
+// One deposit, withdrawal or transfer inside a batch — see Bank.applyBatch
+public class BatchOp {
+
+    final String type;    // DEPOSIT, WITHDRAW or TRANSFER
+    final int    account; // account number (1001 for ACC1001); for a TRANSFER, the sender
+    final int    to;      // for a TRANSFER, the receiver; otherwise 0
+    final long   amount;  // paise
+    final String note;
+
+    public BatchOp(String type, int account, long amount, String note) {
+        this(type, account, 0, amount, note);
+    }
+
+    public BatchOp(String type, int account, int to, long amount, String note) {
+        this.type    = type;
+        this.account = account;
+        this.to      = to;
+        this.amount  = amount;
+        this.note    = note;
+    }
+
+    public static BatchOp deposit(int account, long amount, String note) {
+        return new BatchOp("DEPOSIT", account, amount, note);
+    }
+
+    public static BatchOp withdraw(int account, long amount, String note) {
+        return new BatchOp("WITHDRAW", account, amount, note);
+    }
+
+    public static BatchOp transfer(int from, int to, long amount, String note) {
+        return new BatchOp("TRANSFER", from, to, amount, note);
+    }
+}
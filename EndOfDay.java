@@ -0,0 +1,365 @@
+package bank;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * EndOfDay — the nightly batch: credit a day's interest to every account
+ * and write each account's statement, while the bank keeps serving.
+ *
+ * A point in time without stopping anyone:
+ *   Transaction numbers only go up, so "the bank as of now" is simply
+ *   every transaction numbered below the counter's value when the run
+ *   starts — the cut:
+ *
+ *     ACC1001:  TX7   TX19  TX40 │ TX53  TX61     (53, 61 came in during the run)
+ *                         cut=50 ┘
+ *
+ *   An account's balance at the cut is the balanceAfter of its last entry
+ *   below it. Entries are never changed once written, so this needs no
+ *   lock: each account's lock is taken only for a moment (as for a
+ *   Snapshot), to see how long its history is. Deposits and withdrawals
+ *   carry on the whole time.
+ *
+ * Parallel over the accounts:
+ *   The account list is split in halves, and halves of halves, until a
+ *   slice is LEAF accounts (a RecursiveAction on a ForkJoinPool of
+ *   -Dbank.eod.threads workers). Idle workers steal the big halves still
+ *   waiting in others' queues, so the work evens out by itself.
+ *
+ *                       [ 0 ......................... n )
+ *                [ 0 ........ n/2 )          [ n/2 ........ n )
+ *             [ leaf ]  [ leaf ] ...       [ leaf ]  [ leaf ] ...
+ *
+ *   Each leaf writes its own statement file (ACC1001-ACC1512.txt), so
+ *   workers never share a writer, and posts its interest as batches of
+ *   CREDIT_BATCH deposits: one lock round and one fsync per batch.
+ *
+ * Interest rules (-Dbank.eod.rates, default SAVINGS:4):
+ *   a yearly percentage per account type, paid daily on the balance at the
+ *   cut: balance × rate / 365, rounded to the nearest paisa. Types with no
+ *   rate, and balances of zero or less, earn nothing.
+ *
+ * Running twice:
+ *   A date that finished is refused, and so is one still to come. An
+ *   account that already has that day's interest deposit is not paid
+ *   again, so a run that died half way can simply be started again.
+ *
+ * Statements go to -Dbank.eod.dir/<date>/ and cover everything since the
+ * previous run's cut (kept in the file "last-cut"), or the whole history
+ * the first time.
+ */
+public class EndOfDay {
+
+    private static final int LEAF         = 512;
+    private static final int CREDIT_BATCH = 64;
+    private static final long DAY_BASIS   = 10_000L * 365; // basis points × days in a year
+
+    private final Bank bank;
+    private final Path dir;
+    private final Map<String, Long> rates; // account type → basis points a year
+    private final int threads;
+    private volatile Run last;             // the running or latest run
+
+    public EndOfDay(Bank bank, Path dir, String rules, int threads) {
+        this.bank    = bank;
+        this.dir     = dir;
+        this.rates   = parseRates(rules);
+        this.threads = threads;
+    }
+
+    // "SAVINGS:4,CURRENT:0.5" → {SAVINGS=400, CURRENT=50} (basis points)
+    static Map<String, Long> parseRates(String rules) {
+        Map<String, Long> map = new HashMap<>();
+        if (rules == null || rules.isBlank()) return map;
+        for (String rule : rules.split(",")) {
+            int colon = rule.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Interest rule should be TYPE:percent, not " + rule);
+            double percent = Double.parseDouble(rule.substring(colon + 1).trim());
+            if (percent < 0) throw new IllegalArgumentException("Interest rate cannot be negative: " + rule);
+            map.put(rule.substring(0, colon).trim().toUpperCase(Locale.ROOT), Math.round(percent * 100));
+        }
+        return map;
+    }
+
+    // One day's interest on balance at rate (basis points a year), to the nearest paisa.
+    // balance = q·D + r, so balance·bp/D = q·bp + r·bp/D — and neither product overflows.
+    static long dailyInterest(long balance, long bp) {
+        if (balance <= 0 || bp <= 0) return 0;
+        long q = balance / DAY_BASIS, r = balance % DAY_BASIS;
+        return q * bp + (r * bp + DAY_BASIS / 2) / DAY_BASIS;
+    }
+
+    // Start the run for date in the background; refused while one is running
+    public synchronized Run start(LocalDate date) throws IOException {
+        Run running = last;
+        if (running != null && running.finishedNanos == 0) {
+            throw new RuntimeException("End of day for " + running.date + " is still running.");
+        }
+        // Interest already paid is found by looking back to the date's
+        // start; a later date would look past every deposit made today
+        if (date.isAfter(LocalDate.now())) throw new RuntimeException("End of day for " + date + " cannot run before that day.");
+        Path out = dir.resolve(date.toString());
+        if (Files.exists(out.resolve("DONE"))) throw new RuntimeException("End of day for " + date + " already ran.");
+
+        Files.createDirectories(out);
+        Path lastCut = dir.resolve("last-cut");
+        long fromTx = Files.exists(lastCut)
+            ? Long.parseLong(new String(Files.readAllBytes(lastCut), StandardCharsets.UTF_8).trim())
+            : 0;
+
+        long cut = bank.txCounterValue();
+        if (fromTx > cut) fromTx = 0; // saved by another bank (an in-memory one, since restarted)
+
+        Run run = new Run(date, out, fromTx, cut);
+        last = run;
+        Thread t = new Thread(run::execute, "end-of-day");
+        t.setDaemon(true);
+        t.start();
+        return run;
+    }
+
+    public Run last() {
+        return last;
+    }
+
+    // ── One run ──────────────────────────────────────────────────────────────
+    final class Run {
+        final LocalDate date;
+        final Path      out;
+        final long      fromTx;   // statements start here (the previous cut)
+        final long      cut;      // the point in time: transactions below this number
+        final String    note;
+        final long      dayStart; // epoch millis; earlier entries can't be today's interest
+        final long      startedNanos = System.nanoTime();
+
+        volatile int    accounts;      // in the run (opened before it started)
+        volatile long   finishedNanos; // 0 while running
+        volatile String state = "running";
+        volatile String error;
+
+        final LongAdder processed      = new LongAdder();
+        final LongAdder openedLater    = new LongAdder(); // listed, but opened after the cut
+        final LongAdder credited       = new LongAdder();
+        final LongAdder interest       = new LongAdder(); // paise
+        final LongAdder alreadyPaid    = new LongAdder();
+        final LongAdder failed         = new LongAdder();
+        final LongAdder statementBytes = new LongAdder();
+
+        Run(LocalDate date, Path out, long fromTx, long cut) {
+            this.date     = date;
+            this.out      = out;
+            this.fromTx   = fromTx;
+            this.cut      = cut;
+            this.note     = "Interest for " + date;
+            this.dayStart = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        private void execute() {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<Account> all = bank.getAllAccounts();
+                accounts = all.size();
+                pool.invoke(new Slice(all, 0, all.size()));
+
+                Files.write(dir.resolve("last-cut"), String.valueOf(cut).getBytes(StandardCharsets.UTF_8));
+                Files.write(out.resolve("DONE"), summary().getBytes(StandardCharsets.UTF_8));
+                state = "done";
+                System.out.println("End of day " + date + ": " + summary());
+            } catch (Exception e) {
+                error = e.getMessage();
+                state = "failed";
+                System.err.println("End of day " + date + " failed:");
+                e.printStackTrace();
+            } finally {
+                pool.shutdown();
+                finishedNanos = System.nanoTime();
+            }
+        }
+
+        private String summary() {
+            return String.format("%,d accounts, %,d credited %s, %,d already paid, %,d failed, in %d ms",
+                                 processed.sum(), credited.sum(), Money.format(interest.sum()),
+                                 alreadyPaid.sum(), failed.sum(), elapsedMillis());
+        }
+
+        long elapsedMillis() {
+            long end = finishedNanos == 0 ? System.nanoTime() : finishedNanos;
+            return (end - startedNanos) / 1_000_000;
+        }
+
+        // accounts [lo, hi) of the list — split until small, then do the work
+        private final class Slice extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final List<Account> all;
+            final int lo, hi;
+
+            Slice(List<Account> all, int lo, int hi) {
+                this.all = all;
+                this.lo  = lo;
+                this.hi  = hi;
+            }
+
+            @Override
+            protected void compute() {
+                if (hi - lo <= LEAF) {
+                    if (hi > lo) leaf(all.subList(lo, hi));
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Slice(all, lo, mid), new Slice(all, mid, hi));
+            }
+        }
+
+        private void leaf(List<Account> slice) {
+            // How long each history is right now, under each account's lock
+            // for a moment (in engine mode: one hand-off for the whole slice)
+            List<Snapshot.AccountState> states = bank.captureForSnapshot(slice);
+            List<BatchOp> credits = new ArrayList<>();
+
+            Path file = out.resolve(slice.get(0).accountNumber + "-" + slice.get(slice.size() - 1).accountNumber + ".txt");
+            StringBuilder sb = new StringBuilder(4096);
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (Snapshot.AccountState st : states) {
+                    TransactionList h = st.history;
+                    int end = st.txCount;
+                    while (end > 0 && h.txNo(end - 1) >= cut) end--; // after the cut
+                    if (end == 0) {                                  // opened after the cut
+                        openedLater.increment();
+                        continue;
+                    }
+                    int begin = end;
+                    while (begin > 0 && h.txNo(begin - 1) >= fromTx) begin--;
+
+                    Account acc     = st.account;
+                    long    closing = h.balanceAfter(end - 1);
+                    long    bp      = rates.getOrDefault(acc.type, 0L);
+                    long    due     = dailyInterest(closing, bp);
+                    if (due > 0) {
+                        if (paidToday(h, st.txCount)) alreadyPaid.increment();
+                        else credits.add(BatchOp.deposit(acc.number, due, note));
+                    }
+
+                    statement(sb, acc, h, begin, end, bp, due);
+                    statementBytes.add(sb.length());
+                    w.append(sb);
+                    sb.setLength(0);
+                    processed.increment();
+                }
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+            post(credits);
+        }
+
+        // Does this history already hold today's interest? Only today's
+        // entries are looked at, newest first.
+        private boolean paidToday(TransactionList h, int size) {
+            for (int i = size - 1; i >= 0 && h.timestamp(i) >= dayStart; i--) {
+                if (h.type(i) == Transaction.DEPOSIT && note.equals(h.note(i))) return true;
+            }
+            return false;
+        }
+
+        // Post credits CREDIT_BATCH at a time. A batch is all or nothing, so
+        // if one fails (an account closed or moved away meanwhile) its
+        // deposits are retried one by one and only the bad ones are lost.
+        private void post(List<BatchOp> credits) {
+            for (int i = 0; i < credits.size(); i += CREDIT_BATCH) {
+                List<BatchOp> batch = credits.subList(i, Math.min(i + CREDIT_BATCH, credits.size()));
+                try {
+                    bank.applyBatch(batch);
+                    for (BatchOp op : batch) paid(op);
+                } catch (RuntimeException e) {
+                    for (BatchOp op : batch) {
+                        try {
+                            bank.deposit(op.account, op.amount, op.note);
+                            paid(op);
+                        } catch (RuntimeException one) {
+                            failed.increment();
+                        }
+                    }
+                }
+            }
+        }
+
+        private void paid(BatchOp op) {
+            credited.increment();
+            interest.add(op.amount);
+        }
+
+        private void statement(StringBuilder sb, Account acc, TransactionList h, int begin, int end, long bp, long due) {
+            sb.append(acc.accountNumber).append("  ").append(acc.ownerName).append("  ").append(acc.type)
+              .append("  statement for ").append(date).append('\n');
+            amountLine(sb, "  opening balance", begin == 0 ? 0 : h.balanceAfter(begin - 1));
+            for (int i = begin; i < end; i++) {
+                sb.append("  ");
+                pad(sb, "TX" + h.txNo(i), 10);
+                pad(sb, Instant.ofEpochMilli(h.timestamp(i)).toString(), 26);
+                pad(sb, Transaction.typeName(h.type(i)), 14);
+                right(sb, Money.format(h.amount(i)), 14);
+                right(sb, Money.format(h.balanceAfter(i)), 16);
+                String n = h.note(i);
+                if (n != null && !n.isEmpty()) sb.append("  ").append(n);
+                sb.append('\n');
+            }
+            amountLine(sb, "  closing balance", h.balanceAfter(end - 1));
+            if (bp > 0) amountLine(sb, "  interest (" + Money.format(bp) + "% a year)", due);
+            sb.append('\n');
+        }
+
+        private void amountLine(StringBuilder sb, String label, long paise) {
+            pad(sb, label, 66);
+            right(sb, Money.format(paise), 16);
+            sb.append('\n');
+        }
+
+        // Progress, as GET /api/eod shows it
+        void writeJson(JsonWriter w) throws IOException {
+            long ms   = elapsedMillis();
+            long done = processed.sum();
+            w.beginObject()
+             .name("date").value(date.toString())
+             .name("state").value(state)
+             .name("cut").value("TX" + cut)
+             .name("accounts").value(accounts)
+             .name("processed").value(done)
+             .name("openedAfterCut").value(openedLater.sum())
+             .name("credited").value(credited.sum())
+             .name("interest").money(interest.sum())
+             .name("alreadyPaid").value(alreadyPaid.sum())
+             .name("failed").value(failed.sum())
+             .name("statementBytes").value(statementBytes.sum())
+             .name("elapsedMs").value(ms)
+             .name("accountsPerSecond").value(ms == 0 ? 0 : done * 1000 / ms)
+             .name("dir").value(out.toAbsolutePath().toString())
+             .name("error").value(error)
+             .endObject();
+        }
+    }
+
+    private static void pad(StringBuilder sb, String s, int width) {
+        sb.append(s);
+        for (int i = s.length(); i < width; i++) sb.append(' ');
+    }
+
+    private static void right(StringBuilder sb, String s, int width) {
+        for (int i = s.length(); i < width; i++) sb.append(' ');
+        sb.append(s);
+    }
+}
@@ -0,0 +1,428 @@
+package bank;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * EventHub — pushes Bank's changes to every open GET /api/events stream
+ * (Server-Sent Events), so dashboards don't have to poll.
+ *
+ * How it works:
+ *
+ *   request thread          fan-out thread              writer pool (a few threads)
+ *   Bank commits ─publish─► [ shared queue ] ─match──► sub A [frame frame] ─write─► socket A
+ *    (JSON encoded once)                               sub B [frame]       ─write─► socket B
+ *                                                      sub C  (filtered out)
+ *
+ *   1. Bank tells us about a change once it is committed. It is encoded
+ *      ONCE, however many subscribers there are, into an SSE frame:
+ *
+ *        id: 42
+ *        event: deposit
+ *        data: {"transactions":[{...}]}
+ *
+ *   2. The request thread only drops it on a bounded shared queue, so a
+ *      thousand open dashboards don't slow a deposit down.
+ *   3. One fan-out thread hands the frame to everyone watching all
+ *      accounts, plus whoever watches one of its accounts (looked up by
+ *      account, not by asking every subscriber).
+ *   4. A subscriber with frames waiting is put on a small writer pool,
+ *      which writes all of them in one go. No thread per connection: an
+ *      idle stream costs a small queue and its socket.
+ *
+ * Events: account (created), deposit, withdraw, transfer, batch, undo —
+ * the last five carry {"transactions":[...]}, each with its balanceAfter.
+ *
+ * Slow clients:
+ *   A subscriber buffers at most MAX_PENDING bytes. If its client can't
+ *   keep up, the buffer is thrown away and it gets a single
+ *
+ *        event: resync
+ *
+ *   instead: re-fetch what you show, then carry on from the next event.
+ *   The same happens to everyone if the shared queue overflows, and to a
+ *   client that reconnects with a Last-Event-ID older than the newest
+ *   event — old events are not kept for replay.
+ *
+ *   Every HEARTBEAT seconds each stream gets a ": ping" comment; writing
+ *   it is how closed connections are found. A client that stops reading
+ *   makes its write block, and HttpServer gives us no way to interrupt
+ *   that write. So a subscriber stuck in one write for STUCK_MS is dropped
+ *   and its writer thread written off: the pool gets a replacement (at
+ *   most MAX_STUCK of them), and the stuck thread leaves the pool when
+ *   TCP finally gives up on the socket.
+ *
+ * Order:
+ *   Events are numbered in the order they reach us. Two changes to one
+ *   account committed at the same moment can reach us in either order;
+ *   transaction ids only grow, so a client keeps the newest balanceAfter.
+ */
+public class EventHub implements Bank.Listener {
+
+    static final int  QUEUE       = 65_536;  // events waiting for the fan-out thread
+    static final int  MAX_PENDING = 1 << 20; // bytes buffered per subscriber
+    static final int  MAX_STUCK   = 64;      // writer threads written off at once, at most
+    static final long HEARTBEAT   = 15;      // seconds
+    static final long STUCK_MS    = 30_000;
+
+    private static final byte[] HELLO  = ascii("retry: 3000\n: connected\n\n");
+    private static final byte[] PING   = ascii(": ping\n\n");
+    private static final byte[] RESYNC = ascii("event: resync\ndata: {}\n\n");
+
+    // One change, encoded, on its way to the fan-out thread
+    private static final class Event {
+        final String kind;
+        final int[]  accounts; // account numbers it touches
+        final byte[] data;     // the JSON; null when nobody was subscribed
+
+        Event(String kind, int[] accounts, byte[] data) {
+            this.kind     = kind;
+            this.accounts = accounts;
+            this.data     = data;
+        }
+    }
+
+    private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE);
+    private volatile boolean overflowed;
+    private volatile long    lastId;       // written only by the fan-out thread
+
+    private final int maxSubscribers;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final List<Subscriber> everyone = new CopyOnWriteArrayList<>(); // no filter
+    private final Map<Integer, List<Subscriber>> byAccount = new ConcurrentHashMap<>(); // never holds an empty list
+    private final List<Subscriber> all = new CopyOnWriteArrayList<>();      // for the heartbeat
+
+    private final ThreadPoolExecutor writers;
+    private final int writerThreads;
+    private int stuck; // writer threads currently written off; guarded by this
+
+    final LongAdder published = new LongAdder();
+    final LongAdder resyncs   = new LongAdder();
+
+    public EventHub(int writerThreads, int maxSubscribers) {
+        this.writerThreads  = writerThreads;
+        this.maxSubscribers = maxSubscribers;
+        AtomicInteger n = new AtomicInteger();
+        writers = new ThreadPoolExecutor(writerThreads, writerThreads, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> daemon(r, "events-writer-" + n.incrementAndGet()));
+
+        daemon(this::fanOut, "events-fanout").start();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "events-heartbeat"));
+        timer.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT, HEARTBEAT, TimeUnit.SECONDS);
+    }
+
+    // ── From Bank (request threads) ──────────────────────────────────────────
+
+    @Override
+    public void accountOpened(Account acc) {
+        publish("account", new int[] { acc.number }, w -> Server.writeAccount(w, acc));
+    }
+
+    @Override
+    public void committed(String kind, List<Transaction> txs) {
+        int[] accounts = new int[txs.size()];
+        for (int i = 0; i < accounts.length; i++) accounts[i] = Bank.accountNo(txs.get(i).accountNumber);
+        publish(kind, accounts, w -> {
+            w.beginObject().name("transactions");
+            Server.writeTransactions(w, txs);
+            w.endObject();
+        });
+    }
+
+    // With nobody subscribed the event is not encoded, but it still takes
+    // an id, so a client reconnecting later can tell it missed something
+    private void publish(String kind, int[] accounts, Body body) {
+        byte[] data = subscribers.get() == 0 ? null : encode(body);
+        if (!queue.offer(new Event(kind, accounts, data))) overflowed = true;
+    }
+
+    private interface Body {
+        void write(JsonWriter w) throws IOException;
+    }
+
+    private static byte[] encode(Body body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonWriter w = new JsonWriter((b, len, last) -> out.write(b, 0, len))) {
+            body.write(w);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen: it is all in memory
+        }
+        return out.toByteArray();
+    }
+
+    // ── Fan-out thread ───────────────────────────────────────────────────────
+
+    private void fanOut() {
+        while (true) {
+            Event e;
+            try {
+                e = queue.take();
+            } catch (InterruptedException ie) {
+                return;
+            }
+            if (overflowed) { // events were lost: everyone starts over from here
+                overflowed = false;
+                lastId++;         // and the lost ones count, for Last-Event-ID
+                for (Subscriber s : all) s.resync();
+            }
+            long id = ++lastId;
+            published.increment();
+            if (e.data == null) continue;
+
+            byte[] frame = frame(id, e);
+            for (Subscriber s : everyone) s.offer(frame);
+            for (int acc : e.accounts) {
+                List<Subscriber> watching = byAccount.get(acc);
+                if (watching == null) continue;
+                for (Subscriber s : watching) {
+                    if (s.lastEventId == id) continue; // watches two of its accounts: once is enough
+                    s.lastEventId = id;
+                    s.offer(frame);
+                }
+            }
+        }
+    }
+
+    private static byte[] frame(long id, Event e) {
+        byte[] head = ascii("id: " + id + "\nevent: " + e.kind + "\ndata: ");
+        byte[] f = new byte[head.length + e.data.length + 2];
+        System.arraycopy(head, 0, f, 0, head.length);
+        System.arraycopy(e.data, 0, f, head.length, e.data.length);
+        f[f.length - 2] = '\n';
+        f[f.length - 1] = '\n';
+        return f;
+    }
+
+    // ── Subscribing (request threads) ────────────────────────────────────────
+
+    /*
+     * Start an event stream on ex and return at once; the writer pool
+     * sends everything after this. accounts: only events touching one of
+     * these (empty = all). lastEventId: the client's Last-Event-ID header,
+     * or null. Returns false (sending nothing) when there are already
+     * maxSubscribers streams.
+     */
+    public boolean subscribe(HttpExchange ex, int[] accounts, String lastEventId) throws IOException {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            return false;
+        }
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.getResponseHeaders().set("X-Accel-Buffering", "no"); // tell proxies not to hold events back
+        ex.sendResponseHeaders(200, 0); // chunked, open-ended
+
+        Subscriber s = new Subscriber(ex, accounts);
+        all.add(s);
+        if (accounts.length == 0) everyone.add(s);
+        for (int acc : accounts) {
+            byAccount.compute(acc, (k, watching) -> {
+                if (watching == null) watching = new CopyOnWriteArrayList<>();
+                watching.add(s);
+                return watching;
+            });
+        }
+
+        s.offer(HELLO);
+        if (lastEventId != null && missedSince(lastEventId)) s.resync();
+        return true;
+    }
+
+    private boolean missedSince(String lastEventId) {
+        try {
+            return Long.parseLong(lastEventId.trim()) < lastId;
+        } catch (NumberFormatException e) {
+            return true; // not one of ours
+        }
+    }
+
+    private void remove(Subscriber s) {
+        if (!all.remove(s)) return;
+        everyone.remove(s);
+        for (int acc : s.accounts) {
+            byAccount.computeIfPresent(acc, (k, watching) -> {
+                watching.remove(s);
+                return watching.isEmpty() ? null : watching;
+            });
+        }
+        subscribers.decrementAndGet();
+    }
+
+    public int subscriberCount() { return subscribers.get(); }
+
+    // ── Heartbeat ────────────────────────────────────────────────────────────
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Subscriber s : all) {
+            long since = s.writingSince;
+            if (since != 0 && now - since > STUCK_MS) {
+                s.abandon();
+            } else {
+                s.offer(PING);
+            }
+        }
+    }
+
+    // Stand in for a writer thread that is stuck; false if too many already are
+    private synchronized boolean replaceWriter() {
+        if (stuck == MAX_STUCK) return false;
+        stuck++;
+        writers.setMaximumPoolSize(writerThreads + stuck);
+        writers.setCorePoolSize(writerThreads + stuck);
+        return true;
+    }
+
+    // A written-off thread came back: shrink the pool again
+    private synchronized void writerReturned() {
+        stuck--;
+        writers.setCorePoolSize(writerThreads + stuck);
+        writers.setMaximumPoolSize(writerThreads + stuck);
+    }
+
+    // ── One open stream ──────────────────────────────────────────────────────
+
+    final class Subscriber implements Runnable {
+        final HttpExchange ex;
+        final OutputStream out;
+        final int[]        accounts; // empty = all
+
+        // guarded by this
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private int     pendingBytes;
+        private boolean resync;
+        private boolean scheduled; // on the writer pool, or running there
+        private boolean closed;
+        private boolean abandoned; // its writer thread was written off
+
+        volatile long writingSince; // 0 when not inside a write
+        long lastEventId;           // fan-out thread only
+
+        Subscriber(HttpExchange ex, int[] accounts) {
+            this.ex       = ex;
+            this.out      = ex.getResponseBody();
+            this.accounts = accounts;
+        }
+
+        synchronized void offer(byte[] frame) {
+            if (closed) return;
+            if (pendingBytes + frame.length > MAX_PENDING && !pending.isEmpty()) {
+                dropPending(); // too far behind: skip to a resync
+            }
+            pending.add(frame);
+            pendingBytes += frame.length;
+            schedule();
+        }
+
+        synchronized void resync() {
+            if (closed) return;
+            dropPending();
+            schedule();
+        }
+
+        private void dropPending() {
+            pending.clear();
+            pendingBytes = 0;
+            if (!resync) resyncs.increment();
+            resync = true;
+        }
+
+        private void schedule() {
+            if (scheduled) return;
+            scheduled = true;
+            writers.execute(this);
+        }
+
+        // On the writer pool: write what is waiting, then step aside so
+        // other subscribers get a turn
+        @Override
+        public void run() {
+            byte[][] frames;
+            boolean  sendResync;
+            synchronized (this) {
+                if (closed) return;
+                sendResync   = resync;
+                frames       = pending.toArray(new byte[0][]);
+                resync       = false;
+                pending.clear();
+                pendingBytes = 0;
+            }
+            boolean failed = false;
+            writingSince = System.currentTimeMillis();
+            try {
+                if (sendResync) out.write(RESYNC);
+                for (byte[] f : frames) out.write(f);
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                failed = true; // the client went away
+            } finally {
+                writingSince = 0;
+            }
+
+            boolean wasAbandoned;
+            synchronized (this) {
+                wasAbandoned = abandoned;
+                if (!failed && !closed && (resync || !pending.isEmpty())) {
+                    writers.execute(this); // more came in meanwhile: back of the line
+                    return;
+                }
+                scheduled = false;
+            }
+            if (failed || wasAbandoned) close();
+            if (wasAbandoned) writerReturned();
+        }
+
+        // Stuck in a write for too long: stop feeding it, replace its thread
+        void abandon() {
+            synchronized (this) {
+                if (abandoned || closed || !replaceWriter()) return;
+                abandoned = true;
+                pending.clear();
+                pendingBytes = 0;
+            }
+            remove(this);
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                pending.clear();
+            }
+            remove(this);
+            ex.close();
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────────
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,108 @@
+package bank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Histogram — a lock-free latency histogram with ~12% precision.
+ *
+ * Buckets:
+ *   Every power of two is split into 8 equal sub-buckets, so a bucket is
+ *   never wider than 1/8 of the values it holds:
+ *
+ *     0..15 ns      → one bucket per nanosecond       (index 0..15)
+ *     16..31 ns     → 8 buckets, 2 ns wide            (16..23)
+ *     32..63 ns     → 8 buckets, 4 ns wide            (24..31)
+ *     ...
+ *     2^40.. ns     → the last 8 buckets (18+ minutes; larger values
+ *                     are counted there too)
+ *
+ *   index = 16 + (exponent - 4) * 8 + the 3 bits after the leading one
+ *
+ *   That is 312 counters for the whole range — a few KB — however many
+ *   values are recorded.
+ *
+ * Recording is an increment of one AtomicLongArray slot (plus two
+ * adders for the sum and max): no locks and no allocation, so it is cheap
+ * enough to run on every request. A percentile is read by walking the
+ * counts; a value recorded meanwhile may or may not be included, which
+ * is fine for monitoring.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB      = 1 << SUB_BITS;       // 8 sub-buckets
+    private static final int LINEAR   = SUB << 1;            // 0..15 recorded exactly
+    private static final int MAX_EXP  = 40;
+    static final int BUCKETS = LINEAR + (MAX_EXP - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder       sum    = new LongAdder();
+    private final LongAccumulator max    = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    public long sum() { return sum.sum(); }
+    public long max() { return max.get(); }
+
+    // The value below which a fraction q of the recorded values fall
+    // (upper edge of that bucket, capped at the largest value seen)
+    public long percentile(double q) {
+        return percentiles(q)[0];
+    }
+
+    // Several percentiles from one pass over the counts
+    public long[] percentiles(double... qs) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += snapshot[i] = counts.get(i);
+
+        long[] out = new long[qs.length];
+        if (total == 0) return out;
+        long biggest = max.get();
+        for (int k = 0; k < qs.length; k++) {
+            long rank = (long) Math.ceil(qs[k] * total);
+            if (rank < 1) rank = 1;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    out[k] = Math.min(upperEdge(i), biggest);
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    // ── Bucket arithmetic ────────────────────────────────────────────────────
+
+    static int index(long v) {
+        if (v < LINEAR) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return LINEAR + (exp - SUB_BITS - 1) * SUB + sub;
+    }
+
+    // Largest value that lands in bucket i
+    static long upperEdge(int i) {
+        if (i < LINEAR) return i;
+        int exp = (i - LINEAR) / SUB + SUB_BITS + 1;
+        int sub = (i - LINEAR) % SUB;
+        long width = 1L << (exp - SUB_BITS);
+        return (1L << exp) + (sub + 1) * width - 1;
+    }
+}
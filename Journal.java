@@ -0,0 +1,614 @@
+package bank;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * Write-Ahead Journal
+ *
+ * How it works:
+ *   Every change Bank makes (open account, deposit, withdraw, transfer,
+ *   undo, batch) is
+ *   also written to the end of a file on disk — the journal. When the
+ *   server restarts it reads the journal from the start and applies each
+ *   change again, ending up exactly where it stopped.
+ *
+ *   Each record is small and binary:
+ *
+ *     ┌────────┬────────┬──────┬──────────────────────────────┐
+ *     │ length │ CRC32  │ type │ fields (numbers, strings)    │
+ *     │ 4 B    │ 4 B    │ 1 B  │ length - 1 bytes             │
+ *     └────────┴────────┴──────┴──────────────────────────────┘
+ *
+ *   The CRC lets replay notice a record that was only half written when
+ *   the machine died; everything from there on is cut off.
+ *
+ * Group commit:
+ *   A write is only safe once it has been fsync'ed, and an fsync takes
+ *   milliseconds. Doing one per deposit would cap us at a few hundred
+ *   deposits a second. Instead:
+ *
+ *     request threads ──append──► pending buffer ──┐
+ *                                                  │ flusher thread:
+ *         wait until my record is durable ◄────────┘ write + ONE fsync
+ *                                                    for the whole batch
+ *
+ *   The flusher waits up to maxBatchMicros after the first record of a
+ *   batch for others to join, then writes them all with a single fsync.
+ *
+ * Files:
+ *   The journal lives in a directory as numbered segment files
+ *   (journal-000001.wal, ...). Replay reads them in order and appends go
+ *   to the last one. rotate() starts a new segment, so a Snapshot can
+ *   mark where it starts and the segments before it can be deleted.
+ */
+public class Journal implements Closeable {
+
+    // Record types
+    static final byte CREATE   = 1;
+    static final byte DEPOSIT  = 2;
+    static final byte WITHDRAW = 3;
+    static final byte UNDO     = 4;
+    static final byte BATCH    = 5; // many operations, replayed all or none
+    static final byte TRANSFER = 6;
+
+    private static final int   MAGIC   = 0x4E58424A; // "NXBJ"
+    private static final short VERSION = 2; // 2: amounts in paise
+    private static final int   HEADER  = 6;          // magic + version
+    private static final int   MAX_RECORD = 1 << 23; // 8 MB, room for a large batch
+
+    // Called by replay, once per record, in the order they were written
+    interface Replayer {
+        void create(int accNo, String name, String email, long initial, String type, long txNo, long ts);
+        void deposit(int accNo, long txNo, long amount, String note, long ts);
+        void withdraw(int accNo, long txNo, long amount, String note, long ts);
+        void transfer(int fromNo, int toNo, long txNo, long amount, String note, long ts);
+        void undo(int accNo, long txNo, long reversalTxNo, long ts);
+    }
+
+    private final Path dir;
+    private final long maxBatchNanos;
+
+    private FileChannel channel;  // current segment, swapped by rotate()
+    private long generation;      // number of the current segment
+
+    // Guarded by "this"
+    private ByteBuffer pending  = ByteBuffer.allocate(64 * 1024); // filled by request threads
+    private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024); // written by the flusher
+    private long appended;   // sequence number of the last record appended
+    private long durable;    // sequence number of the last record fsync'ed
+    private boolean closed;
+    private boolean rotating;    // appends wait while a new segment is opened
+
+    private final Thread flusher;
+
+    // The first write or fsync error. The journal stops there for good:
+    // writing on after a hole or a torn record would leave a file that
+    // replays wrong. Set under "this", read by checkWritable without it.
+    private volatile IOException failure;
+
+    // Called back once a record is on disk (failure == null) or the write
+    // failed. Used by LedgerEngine, whose writer thread must never wait.
+    interface Listener {
+        void done(IOException failure);
+    }
+
+    private static final class Waiter {
+        final long seq;
+        final Listener listener;
+        Waiter(long seq, Listener listener) { this.seq = seq; this.listener = listener; }
+    }
+
+    // Guarded by "this"; in sequence order when registered in order
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    private Journal(Path dir, long maxBatchMicros) {
+        this.dir           = dir;
+        this.maxBatchNanos = maxBatchMicros * 1000;
+        this.flusher       = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /*
+     * Open (or create) the journal in dir, replaying every record into r
+     * before any new record can be written. Segments older than fromGen
+     * are already covered by a snapshot and are deleted instead.
+     */
+    public static Journal open(Path dir, long fromGen, long maxBatchMicros, Replayer r) throws IOException {
+        Files.createDirectories(dir);
+        Journal j = new Journal(dir, maxBatchMicros);
+
+        List<Path> segments = segments(dir);
+        while (!segments.isEmpty() && generationOf(segments.get(0)) < fromGen) {
+            Files.delete(segments.remove(0));
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            long good = replaySegment(segments.get(i), r, last);
+            if (last && good < Files.size(segments.get(i))) {
+                // Torn write at the tail — drop it so new records follow good ones
+                try (FileChannel ch = FileChannel.open(segments.get(i), StandardOpenOption.WRITE)) {
+                    ch.truncate(good);
+                    ch.force(true);
+                }
+            }
+        }
+
+        j.generation = segments.isEmpty() ? Math.max(1, fromGen) : generationOf(segments.get(segments.size() - 1));
+        j.channel = openSegment(segmentPath(dir, j.generation));
+        j.flusher.start();
+        return j;
+    }
+
+    static Path segmentPath(Path dir, long gen) {
+        return dir.resolve(String.format("journal-%06d.wal", gen));
+    }
+
+    static long generationOf(Path segment) {
+        String name = segment.getFileName().toString(); // journal-000042.wal
+        return Long.parseLong(name.substring(8, name.length() - 4));
+    }
+
+    // All segment files, oldest first
+    static List<Path> segments(Path dir) throws IOException {
+        List<Path> list = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "journal-*.wal")) {
+            for (Path p : ds) list.add(p);
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    private static FileChannel openSegment(Path p) throws IOException {
+        FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (ch.size() == 0) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER).putInt(MAGIC).putShort(VERSION);
+            h.flip();
+            ch.write(h, 0);
+            ch.force(true);
+        }
+        ch.position(ch.size());
+        return ch;
+    }
+
+    // ── Appending ────────────────────────────────────────────────────────────
+    // Each append returns a sequence number; pass it to await() to wait
+    // until the record is on disk.
+
+    public synchronized long appendCreate(int accNo, String name, String email, long initial,
+                                          String type, long txNo, long ts) {
+        int start = begin(CREATE);
+        try {
+            pending.putInt(accNo);
+            putString(name);
+            putString(email);
+            pending.putLong(initial);
+            putString(type);
+            pending.putLong(txNo);
+            pending.putLong(ts);
+            return end(start);
+        } catch (Throwable t) {
+            abort(start);
+            throw t;
+        }
+    }
+
+    public synchronized long appendDeposit(int accNo, long txNo, long amount, String note, long ts) {
+        return appendMovement(DEPOSIT, accNo, txNo, amount, note, ts);
+    }
+
+    public synchronized long appendWithdraw(int accNo, long txNo, long amount, String note, long ts) {
+        return appendMovement(WITHDRAW, accNo, txNo, amount, note, ts);
+    }
+
+    private long appendMovement(byte type, int accNo, long txNo, long amount, String note, long ts) {
+        int start = begin(type);
+        try {
+            pending.putInt(accNo);
+            pending.putLong(txNo);
+            pending.putLong(amount);
+            putString(note);
+            pending.putLong(ts);
+            return end(start);
+        } catch (Throwable t) {
+            abort(start);
+            throw t;
+        }
+    }
+
+    // Transfers use two transaction numbers: txNo for the sender's half,
+    // txNo + 1 for the receiver's
+    public synchronized long appendTransfer(int fromNo, int toNo, long txNo, long amount, String note, long ts) {
+        int start = begin(TRANSFER);
+        try {
+            pending.putInt(fromNo);
+            pending.putInt(toNo);
+            pending.putLong(txNo);
+            pending.putLong(amount);
+            putString(note);
+            pending.putLong(ts);
+            return end(start);
+        } catch (Throwable t) {
+            abort(start);
+            throw t;
+        }
+    }
+
+    public synchronized long appendUndo(int accNo, long txNo, long reversalTxNo, long ts) {
+        int start = begin(UNDO);
+        try {
+            pending.putInt(accNo);
+            pending.putLong(txNo);
+            pending.putLong(reversalTxNo);
+            pending.putLong(ts);
+            return end(start);
+        } catch (Throwable t) {
+            abort(start);
+            throw t;
+        }
+    }
+
+    // A whole Bank.applyBatch as one record, so replay sees all of it or
+    // none of it. Operations take transaction numbers from firstTxNo up,
+    // in order (a transfer takes two).
+    public synchronized long appendBatch(List<BatchOp> ops, long firstTxNo, long ts) {
+        int start = begin(BATCH);
+        try {
+            pending.putInt(ops.size());
+            pending.putLong(firstTxNo);
+            pending.putLong(ts);
+            for (int i = 0; i < ops.size(); i++) {
+                BatchOp op = ops.get(i);
+                ensure(17);
+                byte type = "DEPOSIT".equals(op.type) ? DEPOSIT : "WITHDRAW".equals(op.type) ? WITHDRAW : TRANSFER;
+                pending.put(type);
+                pending.putInt(op.account);
+                if (type == TRANSFER) pending.putInt(op.to);
+                pending.putLong(op.amount);
+                putString(op.note);
+            }
+            return end(start);
+        } catch (Throwable t) {
+            abort(start);
+            throw t;
+        }
+    }
+
+    // Reserve room for length + CRC, then write the type
+    private int begin(byte type) {
+        while (rotating) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while the journal rotated.");
+            }
+        }
+        if (closed) throw new IllegalStateException("Journal is closed.");
+        checkWritable();
+        ensure(1024);
+        int start = pending.position();
+        pending.position(start + 8);
+        pending.put(type);
+        return start;
+    }
+
+    // Fill in length + CRC, and wake the flusher
+    private long end(int start) {
+        int bodyLen = pending.position() - start - 8;
+        if (bodyLen > MAX_RECORD) throw new RuntimeException("Journal record too large.");
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), start + 8, bodyLen);
+        pending.putInt(start, bodyLen);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appended++;
+        notifyAll();
+        return appended;
+    }
+
+    // Take back a record that failed half way. Left in pending, its length
+    // would stay 0 and replay would stop there, losing every record after it.
+    private void abort(int start) {
+        pending.position(start);
+    }
+
+    private void putString(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (b.length > Bank.MAX_TEXT) throw new RuntimeException("Text too long.");
+        ensure(b.length + 2);
+        pending.putShort((short) b.length);
+        pending.put(b);
+    }
+
+    private void ensure(int n) {
+        if (pending.remaining() >= n) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + n));
+        pending.flip();
+        bigger.put(pending);
+        pending = bigger;
+    }
+
+    // Throws once a write has failed, so callers can refuse a change
+    // before making it in memory
+    public void checkWritable() {
+        IOException f = failure;
+        if (f != null) throw new UncheckedIOException("Journal write failed: " + f.getMessage(), f);
+    }
+
+    // Block until record seq has been fsync'ed
+    public synchronized void await(long seq) {
+        boolean interrupted = false;
+        while (durable < seq && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durable < seq) throw new UncheckedIOException("Journal write failed: " + failure.getMessage(), failure);
+    }
+
+    // Call l once record seq has been fsync'ed — right away if it already
+    // has been. l runs on the flusher thread, so it must be quick.
+    public void whenDurable(long seq, Listener l) {
+        IOException error;
+        synchronized (this) {
+            if (durable < seq && failure == null) {
+                waiters.add(new Waiter(seq, l));
+                return;
+            }
+            error = durable >= seq ? null : failure;
+        }
+        l.done(error);
+    }
+
+    // ── Segments ─────────────────────────────────────────────────────────────
+    /*
+     * Start a new segment and return its number. Every record appended
+     * before this call is in an older segment (and on disk); every record
+     * appended after it is in the new one. Appends pause for one fsync.
+     */
+    public synchronized long rotate() throws IOException {
+        while (rotating) {
+            try { wait(); } catch (InterruptedException e) { throw new IOException("Interrupted", e); }
+        }
+        rotating = true;
+        try {
+            // Let the flusher drain everything appended so far
+            long boundary = appended;
+            while (durable < boundary && failure == null) {
+                try { wait(); } catch (InterruptedException e) { throw new IOException("Interrupted", e); }
+            }
+            if (failure != null) throw failure;
+
+            FileChannel next = openSegment(segmentPath(dir, generation + 1));
+            channel.close();
+            channel = next;
+            generation++;
+            return generation;
+        } finally {
+            rotating = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized long generation() { return generation; }
+
+    // Number of records appended since the journal was opened
+    public synchronized long appended() { return appended; }
+
+    // Remove segments a snapshot has made redundant
+    public void deleteSegmentsBefore(long gen) throws IOException {
+        for (Path p : segments(dir)) {
+            if (generationOf(p) < gen) Files.delete(p);
+        }
+    }
+
+    // ── Flusher thread ───────────────────────────────────────────────────────
+    private void flushLoop() {
+        while (true) {
+            long batchEnd;
+            FileChannel ch;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try { wait(); } catch (InterruptedException e) { return; }
+                }
+                if (pending.position() == 0) return; // closed and drained
+
+                // Let more records join this batch, up to maxBatchNanos
+                long deadline = System.nanoTime() + maxBatchNanos;
+                long left;
+                while (!closed && pending.position() < 256 * 1024
+                        && (left = deadline - System.nanoTime()) > 0) {
+                    try { wait(left / 1_000_000, (int) (left % 1_000_000)); } catch (InterruptedException e) { break; }
+                }
+
+                // Swap buffers so appends can continue while we write
+                ByteBuffer full = pending;
+                pending  = flushing;
+                flushing = full;
+                pending.clear();
+                batchEnd = appended;
+                ch = channel;
+            }
+
+            IOException error = null;
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) ch.write(flushing);
+                ch.force(false); // one fsync for the whole batch
+            } catch (IOException e) {
+                error = e;
+            }
+            flushing.clear();
+
+            List<Waiter> ready = new ArrayList<>();
+            long done;
+            IOException failed;
+            synchronized (this) {
+                if (error != null) failure = error; // every waiter gets the error
+                else durable = batchEnd;
+                notifyAll();
+                done   = durable;
+                failed = failure;
+                while (!waiters.isEmpty() && (failed != null || waiters.peek().seq <= done)) {
+                    ready.add(waiters.poll());
+                }
+            }
+            for (Waiter w : ready) w.listener.done(w.seq <= done ? null : failed);
+            if (failed != null) return; // nothing more is written after the first error
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // ── Replay ───────────────────────────────────────────────────────────────
+    // Returns the offset just past the last good record
+    private static long replaySegment(Path file, Replayer r, boolean last) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER) {
+                if (last) return 0;
+                throw new IOException("Journal segment too short: " + file);
+            }
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            readFully(ch, h, 0);
+            h.flip();
+            if (h.getInt() != MAGIC || h.getShort() != VERSION) throw new IOException("Not a journal segment: " + file);
+
+            // Read the file in big chunks; a record is decoded straight out of the chunk
+            long pos = HEADER;
+            ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+            long bufStart = pos;
+            buf.limit(0);
+            CRC32 crc = new CRC32();
+            while (pos < size) {
+                if (!fill(ch, buf, bufStart, pos, 8)) break;
+                bufStart = pos - buf.position();
+                int len = buf.getInt(buf.position());
+                int sum = buf.getInt(buf.position() + 4);
+                if (len <= 0 || len > MAX_RECORD) break;
+
+                if (buf.capacity() < len + 8) {
+                    buf = ByteBuffer.allocate(len + 8);
+                    buf.limit(0);
+                }
+                if (!fill(ch, buf, bufStart, pos, 8 + len)) break;
+                bufStart = pos - buf.position();
+                int at = buf.position() + 8;
+                crc.reset();
+                crc.update(buf.array(), at, len);
+                if ((int) crc.getValue() != sum) break;
+
+                ByteBuffer body = buf.duplicate();
+                body.position(at).limit(at + len);
+                apply(body.slice(), r);
+                buf.position(at + len);
+                pos += 8 + len;
+            }
+            if (pos < size && !last) throw new IOException("Corrupt journal segment: " + file + " at " + pos);
+            return pos;
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos);
+            if (n < 0) throw new EOFException();
+            pos += n;
+        }
+    }
+
+    // Make buf hold at least n bytes of the file starting at pos (buf's
+    // position then points at pos). Returns false at end of file.
+    private static boolean fill(FileChannel ch, ByteBuffer buf, long bufStart, long pos, int n) throws IOException {
+        if (pos >= bufStart && pos + n <= bufStart + buf.limit()) {
+            buf.position((int) (pos - bufStart));
+            return true;
+        }
+        buf.clear();
+        while (buf.position() < n) {
+            if (ch.read(buf, pos + buf.position()) < 0) return false;
+        }
+        buf.flip();
+        return true;
+    }
+
+    private static void apply(ByteBuffer b, Replayer r) throws IOException {
+        byte type = b.get();
+        switch (type) {
+            case CREATE:
+                r.create(b.getInt(), getString(b), getString(b), b.getLong(), getString(b), b.getLong(), b.getLong());
+                break;
+            case DEPOSIT:
+                r.deposit(b.getInt(), b.getLong(), b.getLong(), getString(b), b.getLong());
+                break;
+            case WITHDRAW:
+                r.withdraw(b.getInt(), b.getLong(), b.getLong(), getString(b), b.getLong());
+                break;
+            case TRANSFER:
+                r.transfer(b.getInt(), b.getInt(), b.getLong(), b.getLong(), getString(b), b.getLong());
+                break;
+            case UNDO:
+                r.undo(b.getInt(), b.getLong(), b.getLong(), b.getLong());
+                break;
+            case BATCH: {
+                int  count = b.getInt();
+                long txNo  = b.getLong();
+                long ts    = b.getLong();
+                for (int i = 0; i < count; i++) {
+                    byte op     = b.get();
+                    int  accNo  = b.getInt();
+                    int  toNo   = op == TRANSFER ? b.getInt() : 0;
+                    long amount = b.getLong();
+                    String note = getString(b);
+                    if (op == DEPOSIT) {
+                        r.deposit(accNo, txNo++, amount, note, ts);
+                    } else if (op == WITHDRAW) {
+                        r.withdraw(accNo, txNo++, amount, note, ts);
+                    } else {
+                        r.transfer(accNo, toNo, txNo, amount, note, ts);
+                        txNo += 2;
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer b) {
+        int len = b.getShort() & 0xFFFF;
+        String s = new String(b.array(), b.arrayOffset() + b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+}
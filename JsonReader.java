@@ -0,0 +1,325 @@
+package bank;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * JsonReader — reads a JSON request body straight off the socket, one
+ * byte at a time, with no regex and no intermediate map.
+ *
+ * How it works:
+ *   Bytes come through a small buffer (at most 8 KB, less when the body
+ *   is known to be shorter) that is refilled as we go, so the body is
+ *   read exactly once and never copied into a String. Callers
+ *   walk the document and pick out the fields they want:
+ *
+ *     r.beginObject();
+ *     while (r.nextField()) {
+ *         if      (r.field("amount")) amount = r.nextAmount();
+ *         else if (r.field("note"))   note   = r.nextString();
+ *         else                        r.skipValue();
+ *     }
+ *
+ *   Field names land in a reused char buffer and are compared in place,
+ *   so only the string values the caller keeps are allocated. Amounts go
+ *   from the bytes to Money.parse without a double in between, whether
+ *   they are sent as 12.50 or "12.50".
+ *
+ * Strings handle every JSON escape (including unicode escapes and surrogate
+ * pairs) and multi-byte UTF-8. Anything malformed throws a
+ * RuntimeException naming the byte offset.
+ */
+public class JsonReader {
+
+    // Request bodies larger than this are refused
+    static final int MAX_BODY = 16 << 20;
+
+    // Deepest nesting accepted; skipValue recurses once per level, so
+    // without a limit a body of [[[[... would overflow the stack
+    static final int MAX_DEPTH = 64;
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int  pos, limit;
+    private long consumed;      // bytes before buf[0]
+
+    // Reused for names, numbers and strings being decoded
+    private final StringBuilder text = new StringBuilder(64);
+
+    // Per open object/array: has it already had a member? (for commas)
+    private boolean[] hadMember = new boolean[16];
+    private int depth;
+
+    public JsonReader(InputStream in) {
+        this(in, -1);
+    }
+
+    // lengthHint: the body's Content-Length if known, else -1
+    public JsonReader(InputStream in, long lengthHint) {
+        this.in  = in;
+        this.buf = new byte[lengthHint < 0 ? 8192 : (int) Math.max(16, Math.min(8192, lengthHint))];
+    }
+
+    // ── Objects and arrays ───────────────────────────────────────────────────
+
+    public void beginObject() throws IOException {
+        expect('{');
+        push();
+    }
+
+    // Move to the next field of the current object; false at its closing }
+    public boolean nextField() throws IOException {
+        if (!nextMember('}')) return false;
+        if (peekToken() != '"') throw error("Expected a field name");
+        pos++;
+        readString();
+        expect(':');
+        return true;
+    }
+
+    // Is the field we are on called name?
+    public boolean field(String name) {
+        if (text.length() != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (text.charAt(i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // The name of the field we are on, for objects whose keys are data
+    public String fieldName() {
+        return text.toString();
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+        push();
+    }
+
+    // Move to the next element of the current array; false at its closing ]
+    public boolean nextElement() throws IOException {
+        return nextMember(']');
+    }
+
+    // ── Values ───────────────────────────────────────────────────────────────
+
+    // What the next value starts with: '{', '[', '"', 'n' (null), 't'/'f', or a number's first char
+    public int peek() throws IOException {
+        return peekToken();
+    }
+
+    // A string value (or null)
+    public String nextString() throws IOException {
+        int c = peekToken();
+        if (c == 'n') {
+            literal("null");
+            return null;
+        }
+        if (c != '"') throw error("Expected a string");
+        pos++;
+        readString();
+        return text.toString();
+    }
+
+    // An amount in paise, written as a number or a string: 12, 12.5, "12.50"
+    public long nextAmount() throws IOException {
+        int c = peekToken();
+        if (c == 'n') {
+            literal("null");
+            throw new RuntimeException("Amount is required.");
+        }
+        if (c == '"') {
+            pos++;
+            readString();
+        } else {
+            readNumber();
+        }
+        return Money.parse(text);
+    }
+
+    // A whole number: a count, an id, a timestamp
+    public long nextLong() throws IOException {
+        peekToken();
+        readNumber();
+        try {
+            return Long.parseLong(text, 0, text.length(), 10);
+        } catch (NumberFormatException e) {
+            throw error("Expected a whole number");
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        int c = peekToken();
+        if (c == 't') { literal("true");  return true; }
+        if (c == 'f') { literal("false"); return false; }
+        throw error("Expected true or false");
+    }
+
+    // Skip whatever value comes next, however deeply nested
+    public void skipValue() throws IOException {
+        int c = peekToken();
+        switch (c) {
+            case '{':
+                beginObject();
+                while (nextField()) skipValue();
+                break;
+            case '[':
+                beginArray();
+                while (nextElement()) skipValue();
+                break;
+            case '"':
+                pos++;
+                readString();
+                break;
+            case 't': literal("true");  break;
+            case 'f': literal("false"); break;
+            case 'n': literal("null");  break;
+            default:  readNumber();
+        }
+    }
+
+    // There must be nothing but whitespace after the document
+    public void end() throws IOException {
+        if (depth != 0) throw error("Unclosed object or array");
+        if (peekToken() != -1) throw error("Unexpected data after the end");
+    }
+
+    // ── Internals ────────────────────────────────────────────────────────────
+
+    private void push() {
+        if (depth == MAX_DEPTH) throw new RuntimeException("Request body too deeply nested.");
+        if (depth == hadMember.length) hadMember = java.util.Arrays.copyOf(hadMember, depth * 2);
+        hadMember[depth++] = false;
+    }
+
+    // Handles the comma before a member, or the closing bracket
+    private boolean nextMember(char close) throws IOException {
+        if (depth == 0) throw error("Not inside an object or array");
+        int c = peekToken();
+        if (c == close) {
+            pos++;
+            depth--;
+            return false;
+        }
+        if (hadMember[depth - 1]) {
+            if (c != ',') throw error("Expected ',' or '" + close + "'");
+            pos++;
+        }
+        hadMember[depth - 1] = true;
+        return true;
+    }
+
+    // Skip whitespace; return the next byte without consuming it (-1 at end)
+    private int peekToken() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) return -1;
+            byte b = buf[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') pos++;
+            else return b & 0xFF;
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (peekToken() != c) throw error("Expected '" + c + "'");
+        pos++;
+    }
+
+    private void literal(String word) throws IOException {
+        for (int i = 0; i < word.length(); i++) {
+            if (read() != word.charAt(i)) throw error("Expected " + word);
+        }
+    }
+
+    // Number chars into text; the format is checked by whoever parses it
+    private void readNumber() throws IOException {
+        text.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) break;
+            int b = buf[pos];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                text.append((char) b);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (text.length() == 0) throw error("Unexpected character");
+    }
+
+    // Decode a string body (opening quote already consumed) into text
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int b = read();
+            if (b == '"') return;
+            if (b == '\\') {
+                escape();
+            } else if (b < 0x20) {
+                throw error(b < 0 ? "Unterminated string" : "Control character in string");
+            } else if (b < 0x80) {
+                text.append((char) b);
+            } else {
+                utf8(b);
+            }
+        }
+    }
+
+    private void escape() throws IOException {
+        int e = read();
+        switch (e) {
+            case '"':  text.append('"');  break;
+            case '\\': text.append('\\'); break;
+            case '/':  text.append('/');  break;
+            case 'b':  text.append('\b'); break;
+            case 'f':  text.append('\f'); break;
+            case 'n':  text.append('\n'); break;
+            case 'r':  text.append('\r'); break;
+            case 't':  text.append('\t'); break;
+            case 'u': {
+                int cp = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = Character.digit(read(), 16);
+                    if (h < 0) throw error("Bad \\u escape");
+                    cp = cp << 4 | h;
+                }
+                text.append((char) cp); // a surrogate pair arrives as two escapes
+                break;
+            }
+            default: throw error("Bad escape");
+        }
+    }
+
+    // One multi-byte UTF-8 character, first byte b
+    private void utf8(int b) throws IOException {
+        int n, cp;
+        if      ((b & 0xE0) == 0xC0) { n = 1; cp = b & 0x1F; }
+        else if ((b & 0xF0) == 0xE0) { n = 2; cp = b & 0x0F; }
+        else if ((b & 0xF8) == 0xF0) { n = 3; cp = b & 0x07; }
+        else throw error("Invalid UTF-8");
+        for (int i = 0; i < n; i++) {
+            int c = read();
+            if ((c & 0xC0) != 0x80) throw error("Invalid UTF-8");
+            cp = cp << 6 | (c & 0x3F);
+        }
+        text.appendCodePoint(cp);
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = limit = 0;
+        if (consumed > MAX_BODY) throw new RuntimeException("Request body too large.");
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        limit = n;
+        return true;
+    }
+
+    private RuntimeException error(String msg) {
+        return new RuntimeException("Invalid JSON: " + msg + " at byte " + (consumed + pos) + ".");
+    }
+}
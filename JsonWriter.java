@@ -0,0 +1,273 @@
+package bank;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * JsonWriter — encodes JSON straight into UTF-8 bytes.
+ *
+ * How it works:
+ *   Values go into a byte buffer, borrowed from the current thread and
+ *   reused by its next response, so writing a response allocates no
+ *   Strings, StringBuilders or getBytes copies. When the buffer fills up
+ *   it is handed to the Target and refilled — a list of any length goes
+ *   out in constant memory:
+ *
+ *     w.beginArray();
+ *     for (Account a : page) {
+ *         w.beginObject().name("accountNumber").value(a.accountNumber)
+ *          .name("balance").money(a.balance).endObject();
+ *     }
+ *     w.endArray();
+ *     w.close();          // hands over the last bytes
+ *
+ *   Commas are added automatically.
+ *
+ * Escaping follows RFC 8259: quote, backslash and every control
+ * character are escaped. Everything else is written as UTF-8, with
+ * surrogate pairs joined (a lone surrogate becomes U+FFFD).
+ */
+public class JsonWriter implements Closeable {
+
+    // Where full buffers go; last == true exactly once, on close()
+    interface Target {
+        void write(byte[] b, int len, boolean last) throws IOException;
+    }
+
+    static final int BUFFER = 32 * 1024;
+
+    // One buffer per thread, lent to one writer at a time
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private final Target target;
+    private final byte[] buf;
+    private int pos;
+    private boolean closed;
+
+    // Per open object/array: does the next member need a comma first?
+    private boolean[] needComma = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(Target target) {
+        this.target = target;
+        byte[] b = BUFFERS.get();
+        if (b != null) {
+            BUFFERS.set(null); // ours until close()
+        } else {
+            b = new byte[BUFFER];
+        }
+        this.buf = b;
+    }
+
+    // ── Structure ────────────────────────────────────────────────────────────
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        put('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        put('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        put('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        put(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        beforeValue();
+        string(name);
+        put(':');
+        afterName = true;
+        return this;
+    }
+
+    // ── Values ───────────────────────────────────────────────────────────────
+
+    public JsonWriter value(String s) throws IOException {
+        beforeValue();
+        if (s == null) ascii("null");
+        else string(s);
+        return this;
+    }
+
+    public JsonWriter value(long n) throws IOException {
+        beforeValue();
+        digits(n);
+        return this;
+    }
+
+    public JsonWriter value(boolean b) throws IOException {
+        beforeValue();
+        ascii(b ? "true" : "false");
+        return this;
+    }
+
+    // paise, written as a number with two decimals: 1250.50
+    public JsonWriter money(long paise) throws IOException {
+        beforeValue();
+        if (paise == Long.MIN_VALUE) {
+            ascii(Money.format(paise));
+            return this;
+        }
+        if (paise < 0) {
+            put('-');
+            paise = -paise;
+        }
+        digits(paise / 100);
+        put('.');
+        long fraction = paise % 100;
+        put((char) ('0' + fraction / 10));
+        put((char) ('0' + fraction % 10));
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        ascii("null");
+        return this;
+    }
+
+    // Hand over what is buffered now (for long-lived streams)
+    public void flush() throws IOException {
+        if (pos > 0) {
+            target.write(buf, pos, false);
+            pos = 0;
+        }
+    }
+
+    // Hand over the rest and give the buffer back to the thread
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            target.write(buf, pos, true);
+        } finally {
+            pos = 0;
+            BUFFERS.set(buf);
+        }
+    }
+
+    // ── Internals ────────────────────────────────────────────────────────────
+
+    private void push() {
+        if (depth == needComma.length) needComma = java.util.Arrays.copyOf(needComma, depth * 2);
+        needComma[depth++] = false;
+    }
+
+    // A comma between members, unless this value follows its name
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (needComma[depth - 1]) put(',');
+            needComma[depth - 1] = true;
+        }
+    }
+
+    private void string(String s) throws IOException {
+        put('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                if (pos == buf.length) flush();
+                buf[pos++] = (byte) c;
+            } else if (c < 0x80) {
+                escape(c);
+            } else if (c < 0x800) {
+                room(2);
+                buf[pos++] = (byte) (0xC0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                room(4);
+                buf[pos++] = (byte) (0xF0 | cp >> 18);
+                buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                if (Character.isSurrogate(c)) c = '\uFFFD'; // unpaired
+                room(3);
+                buf[pos++] = (byte) (0xE0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        put('"');
+    }
+
+    private void escape(char c) throws IOException {
+        room(6);
+        buf[pos++] = '\\';
+        switch (c) {
+            case '"':  buf[pos++] = '"';  break;
+            case '\\': buf[pos++] = '\\'; break;
+            case '\b': buf[pos++] = 'b';  break;
+            case '\f': buf[pos++] = 'f';  break;
+            case '\n': buf[pos++] = 'n';  break;
+            case '\r': buf[pos++] = 'r';  break;
+            case '\t': buf[pos++] = 't';  break;
+            default:
+                buf[pos++] = 'u';
+                buf[pos++] = '0';
+                buf[pos++] = '0';
+                buf[pos++] = HEX[c >> 4];
+                buf[pos++] = HEX[c & 0xF];
+        }
+    }
+
+    private void digits(long n) throws IOException {
+        if (n == Long.MIN_VALUE) {
+            ascii(Long.toString(n));
+            return;
+        }
+        room(20);
+        if (n < 0) {
+            buf[pos++] = '-';
+            n = -n;
+        }
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) { // written backwards; reverse
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    private void ascii(String s) throws IOException {
+        room(s.length());
+        for (int i = 0; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+    }
+
+    private void put(char c) throws IOException {
+        if (pos == buf.length) flush();
+        buf[pos++] = (byte) c;
+    }
+
+    private void room(int n) throws IOException {
+        if (buf.length - pos < n) flush();
+    }
+}
@@ -0,0 +1,179 @@
+package bank;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * LedgerEngine — one thread applies every change, in order, with no locks.
+ *
+ * Why:
+ *   With locks, a hot account makes every thread that touches it queue on
+ *   its stripe, and the OS decides who goes next. Here request threads
+ *   only hand their command over; a single writer thread runs them one
+ *   after another. Nothing is ever contended, the order is the sequence
+ *   number, and the journal and undo stacks see exactly that order.
+ *
+ * Ring buffer:
+ *   A fixed array of slots, allocated once and reused forever:
+ *
+ *      claimed ──►  seq 7  seq 8  seq 9        (request threads fill slots)
+ *                     │
+ *      writer  ──►  seq 6  (applies, then frees the slot)
+ *
+ *   A request thread takes the next sequence number (one atomic add),
+ *   waits if the ring is full, fills slot (seq % size) and publishes it by
+ *   writing the slot's sequence last. The writer reads slots strictly in
+ *   sequence order. When there is nothing to do it spins briefly, then
+ *   parks until a request thread wakes it.
+ *
+ * Durability:
+ *   The writer never waits for fsync. After running a command it registers
+ *   a Journal listener for the command's last record; the flusher thread
+ *   completes the request's future once that record is on disk.
+ *
+ * Reads:
+ *   Reads don't go through the ring. The writer publishes every change
+ *   through volatile fields (balance, the history index) and concurrent
+ *   maps, so request threads read the latest published state directly.
+ */
+public class LedgerEngine {
+
+    // A change to run on the writer thread
+    interface Command<T> {
+        T run();
+    }
+
+    private static final class Slot {
+        volatile long sequence = -1; // == the slot's sequence once it is published
+        Command<?> command;
+        CompletableFuture<Object> future;
+    }
+
+    private final Slot[] ring;
+    private final int    mask;
+    private final Journal journal; // null when running in memory only
+
+    private final AtomicLong claimed = new AtomicLong(); // next sequence to hand out
+    private volatile long    consumed;                   // every sequence below this is done
+
+    private final Thread writer;
+    private volatile boolean sleeping; // writer is parked; publishers must unpark it
+    private volatile boolean running = true;
+
+    // size is rounded up to a power of two
+    LedgerEngine(Journal journal, int size) {
+        int n = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.ring    = new Slot[n];
+        this.mask    = n - 1;
+        this.journal = journal;
+        for (int i = 0; i < n; i++) ring[i] = new Slot();
+
+        writer = new Thread(this::writeLoop, "ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Run c on the writer thread and wait until it is done and durable.
+    // Exceptions thrown by c are rethrown here.
+    @SuppressWarnings("unchecked")
+    <T> T call(Command<T> c) {
+        try {
+            return (T) submit(c).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)            throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    // The slot is claimed before running is read. The writer only exits
+    // once every claimed slot is consumed, so either it will still read
+    // ours, or it had already stopped and we see running == false here.
+    CompletableFuture<Object> submit(Command<?> c) {
+        long seq = claimed.getAndIncrement();
+        while (seq - consumed >= ring.length) {
+            // Nobody will free a slot once the writer is gone
+            if (!running && !writer.isAlive()) throw new IllegalStateException("Ledger engine is stopped.");
+            LockSupport.parkNanos(1_000); // ring full — wait for the writer to catch up
+        }
+
+        Slot s = ring[(int) seq & mask];
+        CompletableFuture<Object> f = new CompletableFuture<>();
+        if (!running) {
+            // Publish the slot empty, so a writer still draining steps over it
+            f.completeExceptionally(new IllegalStateException("Ledger engine is stopped."));
+            c = null;
+        }
+        s.command  = c;
+        s.future   = f;
+        s.sequence = seq; // publish: the writer may now read the slot
+        if (sleeping) LockSupport.unpark(writer);
+        return f;
+    }
+
+    // ── Writer thread ────────────────────────────────────────────────────────
+    private void writeLoop() {
+        long next = 0;
+        int  idle = 0;
+        while (true) {
+            Slot s = ring[(int) next & mask];
+            if (s.sequence != next) {
+                if (!running && claimed.get() == next) return; // stopped and drained
+                if (++idle < 200) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                sleeping = true;
+                if (s.sequence != next) LockSupport.parkNanos(100_000); // re-check after raising the flag
+                sleeping = false;
+                idle = 0;
+                continue;
+            }
+            idle = 0;
+
+            Command<?> c = s.command;
+            CompletableFuture<Object> f = s.future;
+            s.command = null;
+            s.future  = null;
+            consumed = ++next; // slot is free for reuse
+            if (c != null) execute(c, f); // null: submitted after stop(), already failed
+        }
+    }
+
+    private void execute(Command<?> c, CompletableFuture<Object> f) {
+        long before = journal == null ? 0 : journal.appended();
+        Object result;
+        try {
+            result = c.run();
+        } catch (Throwable t) {
+            // Errors too (a StackOverflowError, an OutOfMemoryError): if one
+            // ended this thread, f and every later future would never complete
+            f.completeExceptionally(t);
+            return;
+        }
+
+        // We are the only thread appending, so our records end at appended()
+        long last = journal == null ? 0 : journal.appended();
+        if (last == before) {
+            f.complete(result); // nothing journaled (a read, or "nothing to undo")
+            return;
+        }
+        journal.whenDurable(last, failure -> {
+            if (failure == null) f.complete(result);
+            else f.completeExceptionally(new java.io.UncheckedIOException("Journal write failed: " + failure.getMessage(), failure));
+        });
+    }
+
+    // Finish what was already submitted, then stop the writer
+    void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
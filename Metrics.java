@@ -0,0 +1,274 @@
+package bank;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Metrics — a Filter in front of every route that times each request.
+ *
+ * How it works:
+ *   HttpServer runs the filter chain before the handler, so one Filter
+ *   sees every exchange:
+ *
+ *     request → Metrics.doFilter ─┬─ wrap the body streams (to count bytes)
+ *                                 ├─ chain.doFilter → the route's handler
+ *                                 └─ record time, status, bytes per route
+ *
+ *   Requests are grouped by route, not by URL, so the number of series
+ *   stays fixed: /api/accounts/ACC1001/deposit and .../ACC2002/deposit
+ *   are both "POST /api/accounts/{id}/deposit".
+ *
+ *   Everything is recorded with lock-free counters (see Histogram and
+ *   LongAdder), so measuring a request never makes two requests wait
+ *   for each other.
+ *
+ * Bank's own operations are timed inside Bank (Bank.getTimings) and are
+ * reported here next to the routes. GET /api/metrics returns it all as
+ * JSON; ?format=prometheus gives the Prometheus text format.
+ */
+public class Metrics extends Filter {
+
+    // Quantiles reported for every histogram
+    static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+    private static final String[] Q_NAMES = { "p50", "p99", "p999" };
+
+    private static final Set<String> ACTIONS = Set.of("deposit", "withdraw", "history", "undo");
+
+    static final class Route {
+        final Histogram latency       = new Histogram(); // nanos
+        final LongAdder requestBytes  = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(long nanos, int status, long in) {
+            latency.record(nanos);
+            requestBytes.add(in);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Bank bank;
+    private volatile ThreadPoolExecutor pool; // for the queue depth, if requests run on one
+
+    public Metrics(Bank bank) {
+        this.bank = bank;
+    }
+
+    void watchPool(Object executor) {
+        if (executor instanceof ThreadPoolExecutor) pool = (ThreadPoolExecutor) executor;
+    }
+
+    // ── Filter ───────────────────────────────────────────────────────────────
+
+    @Override
+    public String description() {
+        return "Per-route latency, status and byte counts";
+    }
+
+    @Override
+    public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        Route r = routes.computeIfAbsent(route(ex), k -> new Route());
+        CountingIn  in  = new CountingIn(ex.getRequestBody());
+        CountingOut out = new CountingOut(ex.getResponseBody(), r.responseBytes);
+        ex.setStreams(in, out);
+
+        boolean threw = true;
+        try {
+            chain.doFilter(ex);
+            threw = false;
+        } finally {
+            inFlight.decrementAndGet();
+            // A handler that threw got no response from us; HttpServer drops the connection
+            int status = threw ? 500 : ex.getResponseCode();
+            r.record(System.nanoTime() - start, status, in.count);
+        }
+    }
+
+    // "POST /api/accounts/{id}/deposit" — ids and unknown paths folded together
+    static String route(HttpExchange ex) {
+        String m = ex.getRequestMethod();
+        String method = "GET".equals(m) || "POST".equals(m) || "HEAD".equals(m) ? m : "OTHER";
+        String context = ex.getHttpContext().getPath();
+        if ("/".equals(context)) return method + " /static";
+        if (!"/api/accounts".equals(context)) return method + " " + context;
+
+        String[] parts = ex.getRequestURI().getPath().split("/"); // ["", "api", "accounts", id, action]
+        if (parts.length == 3) return method + " /api/accounts";
+        if (parts.length == 4) return method + " /api/accounts/{id}";
+        if (parts.length == 5 && ACTIONS.contains(parts[4])) return method + " /api/accounts/{id}/" + parts[4];
+        return method + " /api/accounts/other";
+    }
+
+    // ── Output ───────────────────────────────────────────────────────────────
+
+    // {"inFlight":1,"queued":0,"routes":{"GET /api/stats":{"count":..,"p50Micros":..}},"bank":{...}}
+    void writeJson(JsonWriter w) throws IOException {
+        w.beginObject()
+         .name("inFlight").value(inFlight.get())
+         .name("queued").value(queued());
+
+        w.name("routes").beginObject();
+        for (Map.Entry<String, Route> e : sorted(routes).entrySet()) {
+            Route r = e.getValue();
+            w.name(e.getKey()).beginObject();
+            writeLatency(w, r.latency);
+            w.name("requestBytes").value(r.requestBytes.sum())
+             .name("responseBytes").value(r.responseBytes.sum());
+            w.name("status").beginObject();
+            for (Map.Entry<Integer, LongAdder> s : new TreeMap<>(r.statuses).entrySet()) {
+                w.name(String.valueOf(s.getKey())).value(s.getValue().sum());
+            }
+            w.endObject().endObject();
+        }
+        w.endObject();
+
+        w.name("bank").beginObject();
+        for (Map.Entry<String, Histogram> e : bank.getTimings().entrySet()) {
+            w.name(e.getKey()).beginObject();
+            writeLatency(w, e.getValue());
+            w.endObject();
+        }
+        w.endObject().endObject();
+    }
+
+    private static void writeLatency(JsonWriter w, Histogram h) throws IOException {
+        long[] p = h.percentiles(QUANTILES);
+        w.name("count").value(h.count());
+        for (int i = 0; i < p.length; i++) w.name(Q_NAMES[i] + "Micros").value(p[i] / 1_000);
+        w.name("maxMicros").value(h.max() / 1_000);
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        Map<String, Route> rs = sorted(routes);
+
+        sb.append("# HELP bank_http_in_flight Requests being handled right now.\n")
+          .append("# TYPE bank_http_in_flight gauge\n")
+          .append("bank_http_in_flight ").append(inFlight.get()).append('\n');
+        sb.append("# HELP bank_http_queued Requests waiting for a worker thread.\n")
+          .append("# TYPE bank_http_queued gauge\n")
+          .append("bank_http_queued ").append(queued()).append('\n');
+
+        sb.append("# HELP bank_http_request_duration_seconds Time from request to response, by route.\n")
+          .append("# TYPE bank_http_request_duration_seconds summary\n");
+        for (Map.Entry<String, Route> e : rs.entrySet()) {
+            summary(sb, "bank_http_request_duration_seconds", "route", e.getKey(), e.getValue().latency);
+        }
+
+        sb.append("# HELP bank_http_requests_total Responses sent, by route and status code.\n")
+          .append("# TYPE bank_http_requests_total counter\n");
+        for (Map.Entry<String, Route> e : rs.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> s : new TreeMap<>(e.getValue().statuses).entrySet()) {
+                sb.append("bank_http_requests_total{route=\"").append(e.getKey())
+                  .append("\",status=\"").append(s.getKey()).append("\"} ").append(s.getValue().sum()).append('\n');
+            }
+        }
+
+        sb.append("# HELP bank_http_request_bytes_total Request body bytes read, by route.\n")
+          .append("# TYPE bank_http_request_bytes_total counter\n");
+        for (Map.Entry<String, Route> e : rs.entrySet()) {
+            sb.append("bank_http_request_bytes_total{route=\"").append(e.getKey()).append("\"} ")
+              .append(e.getValue().requestBytes.sum()).append('\n');
+        }
+        sb.append("# HELP bank_http_response_bytes_total Response body bytes written (after gzip), by route.\n")
+          .append("# TYPE bank_http_response_bytes_total counter\n");
+        for (Map.Entry<String, Route> e : rs.entrySet()) {
+            sb.append("bank_http_response_bytes_total{route=\"").append(e.getKey()).append("\"} ")
+              .append(e.getValue().responseBytes.sum()).append('\n');
+        }
+
+        sb.append("# HELP bank_op_duration_seconds Time for a Bank change, including lock and fsync waits.\n")
+          .append("# TYPE bank_op_duration_seconds summary\n");
+        for (Map.Entry<String, Histogram> e : bank.getTimings().entrySet()) {
+            summary(sb, "bank_op_duration_seconds", "op", e.getKey(), e.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static void summary(StringBuilder sb, String name, String label, String value, Histogram h) {
+        long[] p = h.percentiles(QUANTILES);
+        for (int i = 0; i < p.length; i++) {
+            sb.append(name).append('{').append(label).append("=\"").append(value)
+              .append("\",quantile=\"").append(QUANTILES[i]).append("\"} ").append(seconds(p[i])).append('\n');
+        }
+        sb.append(name).append("_sum{").append(label).append("=\"").append(value).append("\"} ")
+          .append(seconds(h.sum())).append('\n');
+        sb.append(name).append("_count{").append(label).append("=\"").append(value).append("\"} ")
+          .append(h.count()).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.valueOf(nanos / 1e9);
+    }
+
+    private int queued() {
+        ThreadPoolExecutor p = pool;
+        return p == null ? 0 : p.getQueue().size();
+    }
+
+    private static <V> Map<String, V> sorted(Map<String, V> m) {
+        return new TreeMap<>(m);
+    }
+
+    // ── Byte counting streams ────────────────────────────────────────────────
+    // A request body is read only by the handler thread, so a plain field
+    // is enough. A response body may outlive the handler: /api/events hands
+    // it to EventHub, which writes from its own threads for as long as the
+    // client stays. So response bytes go straight into the route's
+    // LongAdder as they are written.
+
+    private static final class CountingIn extends FilterInputStream {
+        long count;
+
+        CountingIn(InputStream in) { super(in); }
+
+        @Override public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static final class CountingOut extends FilterOutputStream {
+        private final LongAdder count;
+
+        CountingOut(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override public void write(int b) throws IOException {
+            out.write(b);
+            count.increment();
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len); // FilterOutputStream would write it byte by byte
+            count.add(len);
+        }
+    }
+}
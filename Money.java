@@ -0,0 +1,81 @@
+package bank;
+
+/*
+ * Money — amounts are stored as a whole number of paise (1/100 rupee).
+ *
+ * Why not double:
+ *   A double can't hold most decimal fractions exactly. 0.1 + 0.2 gives
+ *   0.30000000000000004, and after a few million deposits those tiny
+ *   errors add up to real money. A long count of paise is always exact,
+ *   and a long can be updated atomically with a single CAS.
+ *
+ *     "1250.5"  ──parse──►  125050  ──format──►  "1250.50"
+ *
+ * Both directions work on chars directly: no BigDecimal, no double, no
+ * regex.
+ */
+public final class Money {
+
+    private Money() { }
+
+    // Largest value we accept from text: 15 digits of rupees still fits a long of paise
+    private static final int MAX_WHOLE_DIGITS = 15;
+
+    // "1250", "1250.5", "1250.50", "-3.25" → paise
+    public static long parse(CharSequence s) {
+        if (s == null) throw new RuntimeException("Amount is required.");
+        int len = s.length();
+        int i = 0;
+        while (i < len && s.charAt(i) == ' ') i++;
+        while (len > i && s.charAt(len - 1) == ' ') len--;
+
+        boolean negative = false;
+        if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = s.charAt(i++) == '-';
+
+        long whole = 0;
+        int digits = 0;
+        while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            whole = whole * 10 + (s.charAt(i++) - '0');
+            if (++digits > MAX_WHOLE_DIGITS) throw new RuntimeException("Amount is too large.");
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < len && s.charAt(i) == '.') {
+            i++;
+            while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                int d = s.charAt(i++) - '0';
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + d;
+                } else if (d != 0) {
+                    throw new RuntimeException("Amounts can have at most 2 decimal places.");
+                }
+                fractionDigits++;
+            }
+        }
+        if (i != len || (digits == 0 && fractionDigits == 0)) {
+            throw new RuntimeException("Invalid amount: " + s);
+        }
+        if (fractionDigits == 1) fraction *= 10; // ".5" is 50 paise
+
+        long paise = whole * 100 + fraction;
+        return negative ? -paise : paise;
+    }
+
+    // paise → "1250.50"
+    public static String format(long paise) {
+        return append(new StringBuilder(24), paise).toString();
+    }
+
+    public static StringBuilder append(StringBuilder sb, long paise) {
+        if (paise < 0) {
+            sb.append('-');
+            if (paise == Long.MIN_VALUE) return sb.append("92233720368547758.08");
+            paise = -paise;
+        }
+        long fraction = paise % 100;
+        sb.append(paise / 100).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction);
+    }
+}
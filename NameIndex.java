@@ -0,0 +1,178 @@
+package bank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/*
+ * DSA: Inverted Index of trigrams
+ *
+ * How it works:
+ *   Every owner name is cut into overlapping 3-letter pieces (trigrams):
+ *
+ *     "alice"  →  "ali", "lic", "ice"
+ *
+ *   For each trigram we keep a "posting list": the ids of every account
+ *   whose name contains it, in increasing order.
+ *
+ *     "ali" → [0, 7, 42]
+ *     "lic" → [0, 42]
+ *     "ice" → [0, 3, 42]
+ *
+ *   A name that contains "alic" must contain both "ali" and "lic", so to
+ *   search we only look at accounts that are in EVERY posting list of the
+ *   query's trigrams (the intersection — here [0, 42]), then confirm each
+ *   one with a real contains() check.
+ *
+ *   Queries shorter than 3 letters have no trigram, so they fall back to
+ *   scanning the pre-lowercased names.
+ *
+ * Ids are handed out in insertion order, so posting lists stay sorted just
+ * by appending, and results come back in account-creation order.
+ *
+ * Removing an account (when it moves to another shard) only clears its
+ * slot in docs[]; its id stays in the posting lists and is skipped when
+ * met. Accounts leave in bulk and rarely, so the few dead ids aren't
+ * worth rewriting every list they appear in.
+ */
+public class NameIndex {
+
+    // A growable, sorted list of account ids
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return; // trigram seen twice in one name
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    private Account[] docs = new Account[1024]; // id → account
+    private int count;
+    private int removed;
+    private final HashMap<Long, Postings> postings = new HashMap<>();
+
+    private final ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
+
+    // Lower-case once here, so searches never have to
+    static String normalize(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    // Three chars packed into one long — cheaper to hash than a String
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    public void add(Account acc) {
+        String key = acc.nameKey;
+        rw.writeLock().lock();
+        try {
+            int id = count++;
+            if (id == docs.length) docs = Arrays.copyOf(docs, id * 2);
+            docs[id] = acc;
+            for (int i = 0; i + 3 <= key.length(); i++) {
+                postings.computeIfAbsent(trigram(key, i), k -> new Postings()).add(id);
+            }
+        } finally {
+            rw.writeLock().unlock();
+        }
+    }
+
+    // Accounts whose owner name contains the keyword (case-insensitive), at most limit
+    public List<Account> search(String keyword, int limit) {
+        String q = normalize(keyword);
+        List<Account> result = new ArrayList<>();
+        if (limit <= 0) return result;
+
+        rw.readLock().lock();
+        try {
+            if (q.length() < 3) {
+                for (int id = 0; id < count && result.size() < limit; id++) {
+                    if (docs[id] != null && docs[id].nameKey.contains(q)) result.add(docs[id]);
+                }
+                return result;
+            }
+
+            // Fetch the posting list of each trigram; a missing one means no match
+            int n = q.length() - 2;
+            Postings[] lists = new Postings[n];
+            for (int i = 0; i < n; i++) {
+                lists[i] = postings.get(trigram(q, i));
+                if (lists[i] == null) return result;
+            }
+            // Drive the intersection from the shortest list
+            Arrays.sort(lists, (a, b) -> a.size - b.size);
+
+            int[] cursor = new int[n];
+            Postings smallest = lists[0];
+            outer:
+            for (int c = 0; c < smallest.size; c++) {
+                int id = smallest.ids[c];
+                for (int l = 1; l < n; l++) {
+                    int pos = seek(lists[l], cursor[l], id);
+                    cursor[l] = pos;
+                    if (pos == lists[l].size) break outer;      // that list is used up
+                    if (lists[l].ids[pos] != id) continue outer; // id missing from it
+                }
+                // Every trigram matched — confirm they are in the right order
+                if (docs[id] != null && docs[id].nameKey.contains(q)) {
+                    result.add(docs[id]);
+                    if (result.size() >= limit) break;
+                }
+            }
+            return result;
+        } finally {
+            rw.readLock().unlock();
+        }
+    }
+
+    // First position >= from whose id is >= target.
+    // Gallops (1, 2, 4, 8 ... steps) then binary searches, so skipping
+    // far ahead in a long posting list costs O(log distance).
+    private static int seek(Postings p, int from, int target) {
+        int[] ids = p.ids;
+        int hi = from, step = 1;
+        while (hi < p.size && ids[hi] < target) {
+            from = hi + 1;
+            hi  += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, p.size);
+        int pos = Arrays.binarySearch(ids, from, hi, target);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    // Drop every account that matches — O(n); returns how many went
+    public int removeIf(Predicate<Account> which) {
+        rw.writeLock().lock();
+        try {
+            int n = 0;
+            for (int id = 0; id < count; id++) {
+                if (docs[id] != null && which.test(docs[id])) {
+                    docs[id] = null;
+                    n++;
+                }
+            }
+            removed += n;
+            return n;
+        } finally {
+            rw.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        rw.readLock().lock();
+        try {
+            return count - removed;
+        } finally {
+            rw.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bank;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * NoteArena — every transaction note in the bank, packed as UTF-8 into
+ * shared 1 MB pages.
+ *
+ * Why:
+ *   A note kept as its own String costs ~40 bytes of headers on top of
+ *   its characters, and most notes are the same few words ("Deposit",
+ *   "Salary credit", "Transfer"). Here a note is stored once and a
+ *   transaction keeps only a long that says where it is:
+ *
+ *     ref = offset << 24 | length           (0 = the empty note)
+ *
+ *     pages: [ "Account opened" "Deposit" "Salary credit" "Rent March" ... ]
+ *              ^ offset 1, length 14
+ *
+ * Interning:
+ *   Short notes are looked up in a map first, so "Deposit" is written to
+ *   the arena once and every deposit shares its ref. The map stops
+ *   growing at COMMON_MAX entries; after that, new notes are just
+ *   appended.
+ *
+ * Threads:
+ *   Writers reserve their bytes with one atomic add and copy them in
+ *   without a lock; only allocating a new page takes one. A ref is only
+ *   handed to readers through TransactionList, whose volatile size
+ *   publishes the bytes along with the rest of the entry.
+ *
+ * The arena is append-only: a note stays for the life of the process.
+ */
+public class NoteArena {
+
+    private static final int  PAGE_BITS  = 20;
+    private static final int  PAGE       = 1 << PAGE_BITS;      // 1 MB
+    private static final int  LEN_BITS   = 24;
+    private static final long MAX_LEN    = (1L << LEN_BITS) - 1; // 16 MB
+    private static final int  COMMON_MAX = 4096;
+    private static final int  COMMON_LEN = 64;                   // longer notes aren't interned
+
+    private final Map<String, Long> common = new ConcurrentHashMap<>();
+    private final AtomicLong next = new AtomicLong(1); // offset 0 is never used, so ref 0 means ""
+    private volatile byte[][] pages = new byte[16][];
+
+    // Store a note; returns its ref (null and "" both give 0)
+    public long add(String note) {
+        if (note == null || note.isEmpty()) return 0;
+        boolean shareable = note.length() <= COMMON_LEN;
+        if (shareable) {
+            Long ref = common.get(note);
+            if (ref != null) return ref;
+        }
+
+        byte[] b = note.getBytes(StandardCharsets.UTF_8);
+        if (b.length > MAX_LEN) throw new RuntimeException("Note is too long.");
+        long off = next.getAndAdd(b.length);
+        for (int copied = 0; copied < b.length; ) {
+            long at  = off + copied;
+            int  in  = (int) (at & (PAGE - 1));
+            int  n   = Math.min(b.length - copied, PAGE - in);
+            System.arraycopy(b, copied, page(at >>> PAGE_BITS), in, n);
+            copied += n;
+        }
+        long ref = off << LEN_BITS | b.length;
+        if (shareable && common.size() < COMMON_MAX) {
+            Long first = common.putIfAbsent(note, ref); // lost a race: ours is just unused bytes
+            if (first != null) return first;
+        }
+        return ref;
+    }
+
+    public String get(long ref) {
+        int len = (int) (ref & MAX_LEN);
+        if (len == 0) return "";
+        long off = ref >>> LEN_BITS;
+        int  in  = (int) (off & (PAGE - 1));
+        if (in + len <= PAGE) {
+            return new String(pages[(int) (off >>> PAGE_BITS)], in, len, StandardCharsets.UTF_8);
+        }
+        byte[] b = new byte[len]; // spans pages
+        for (int copied = 0; copied < len; ) {
+            long at = off + copied;
+            int  i  = (int) (at & (PAGE - 1));
+            int  n  = Math.min(len - copied, PAGE - i);
+            System.arraycopy(pages[(int) (at >>> PAGE_BITS)], i, b, copied, n);
+            copied += n;
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // Bytes reserved so far
+    public long bytes() {
+        return next.get() - 1;
+    }
+
+    private byte[] page(long p) {
+        byte[][] ps = pages;
+        if (p < ps.length && ps[(int) p] != null) return ps[(int) p];
+        synchronized (this) {
+            ps = pages;
+            if (p < ps.length && ps[(int) p] != null) return ps[(int) p];
+            // Copy, fill in, then publish: a page is only ever seen through the
+            // volatile write of the directory that holds it
+            ps = java.util.Arrays.copyOf(ps, (int) Math.max(ps.length, p + 1) * (p < ps.length ? 1 : 2));
+            ps[(int) p] = new byte[PAGE];
+            pages = ps;
+            return ps[(int) p];
+        }
+    }
+}
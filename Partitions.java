@@ -0,0 +1,202 @@
+package bank;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+ * Partitions — which accounts a shard owns, and a gate that can stop
+ * writes to some of them while they move to another shard.
+ *
+ * Virtual partitions:
+ *   Every account number maps to one of 64 fixed partitions by Fibonacci
+ *   hashing (the same trick as AccountTable): consecutive numbers land in
+ *   different partitions, so new accounts spread over every shard.
+ *
+ *     ACC1001 → 37    ACC1002 → 13    ACC1003 → 54    ...
+ *
+ *   Shards own whole partitions, never single accounts. Adding a shard
+ *   moves a few partitions to it; the mapping number → partition never
+ *   changes, so nothing has to be rehashed.
+ *
+ * Epochs:
+ *   Each owned partition has an epoch, bumped every time it moves. If a
+ *   move is cut short, two shards may both claim it for a while; the
+ *   higher epoch is the real owner (see Router).
+ *
+ * The gate:
+ *   Every change enters the partitions of the accounts it touches first
+ *   (a bit mask, one bit per partition), and leaves them when done:
+ *
+ *     enter:   active[p]++ for each p   then check frozen / owned
+ *     freeze:  frozen |= p              then wait until active[p] == 0
+ *
+ *   Each side writes before it reads the other's variable, so either the
+ *   change sees the freeze and backs out, or the freeze waits for it —
+ *   never neither. A frozen partition can still be read; writes to it get
+ *   503 until it has moved, and the router retries them on the new owner.
+ *
+ * Ownership is kept in the file "partitions" next to the journal, one
+ * "partition epoch" line each, replaced atomically on every change.
+ */
+public class Partitions {
+
+    static final int COUNT = 64;
+
+    private static final int GOLDEN = 0x9E3779B9; // 2^32 / golden ratio
+    private static final String FILE = "partitions";
+
+    // Partition of an account number — the top 6 bits of its hash
+    static int of(int accNo) {
+        return (accNo * GOLDEN) >>> 26;
+    }
+
+    static long bit(int accNo) {
+        return 1L << of(accNo);
+    }
+
+    // A change hit a partition that is moving (503) or not ours (421)
+    static final class Unavailable extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+        final int partition;
+
+        Unavailable(int status, int partition, String msg) {
+            super(msg);
+            this.status    = status;
+            this.partition = partition;
+        }
+    }
+
+    private final Path file;                     // null: kept in memory only
+    private final long[] epochs = new long[COUNT]; // 0 = not ours; guarded by this
+    private volatile long owned;                 // bit p set: we own partition p
+    private volatile long frozen;                // bit p set: no new writes to p
+    private final AtomicIntegerArray active = new AtomicIntegerArray(COUNT);
+
+    private Partitions(Path file) {
+        this.file = file;
+    }
+
+    static Partitions inMemory() {
+        return new Partitions(null);
+    }
+
+    // The ownership saved in dir, or none yet
+    static Partitions load(Path dir) throws IOException {
+        Partitions p = new Partitions(dir.resolve(FILE));
+        if (Files.exists(p.file)) {
+            for (String line : Files.readAllLines(p.file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                String[] f = line.trim().split(" ");
+                int part = Integer.parseInt(f[0]);
+                p.epochs[part] = Long.parseLong(f[1]);
+                p.owned |= 1L << part;
+            }
+        }
+        return p;
+    }
+
+    // ── Ownership ────────────────────────────────────────────────────────────
+
+    boolean owns(int part)         { return (owned & (1L << part)) != 0; }
+    boolean ownsAccount(int accNo) { return (owned & bit(accNo)) != 0; }
+    boolean isFrozen(int part)     { return (frozen & (1L << part)) != 0; }
+
+    // Before answering for an account at all: one that has moved away
+    // must not look like one that never existed
+    void checkOwns(int accNo) {
+        if (accNo != 0 && !ownsAccount(accNo)) {
+            int p = of(accNo);
+            throw new Unavailable(421, p, "Partition " + p + " is not on this shard.");
+        }
+    }
+
+    synchronized long epoch(int part) {
+        return epochs[part];
+    }
+
+    // Take partition part at this epoch (saved before it takes effect)
+    synchronized void claim(int part, long epoch) throws IOException {
+        if (epoch <= 0) throw new IllegalArgumentException("Epoch must be positive.");
+        epochs[part] = epoch;
+        save();
+        owned  |= 1L << part;
+        frozen &= ~(1L << part);
+    }
+
+    // Give partition part up; changes still running in it finish first
+    synchronized void release(int part) throws IOException {
+        long b = 1L << part;
+        frozen |= b;
+        awaitIdle(part);
+        epochs[part] = 0;
+        save();
+        owned  &= ~b;
+        frozen &= ~b;
+    }
+
+    private void save() throws IOException {
+        if (file == null) return;
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p < COUNT; p++) {
+            if (epochs[p] > 0) sb.append(p).append(' ').append(epochs[p]).append('\n');
+        }
+        Path tmp = file.resolveSibling(FILE + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(java.nio.ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ── The gate ─────────────────────────────────────────────────────────────
+
+    // Stop new writes to part and wait for the running ones
+    synchronized void freeze(int part) {
+        if (!owns(part)) throw new Unavailable(421, part, "Partition " + part + " is not on this shard.");
+        frozen |= 1L << part;
+        awaitIdle(part);
+    }
+
+    synchronized void thaw(int part) {
+        frozen &= ~(1L << part);
+    }
+
+    private void awaitIdle(int part) {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (active.get(part) > 0) {
+            if (System.nanoTime() > deadline) {
+                frozen &= ~(1L << part);
+                throw new IllegalStateException("Partition " + part + " still busy after 10 s.");
+            }
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+    }
+
+    // Before a change to the accounts in mask; throws if any is unavailable
+    void enter(long mask) {
+        for (long m = mask; m != 0; m &= m - 1) active.incrementAndGet(Long.numberOfTrailingZeros(m));
+        long notOurs = mask & ~owned, moving = mask & frozen;
+        if (notOurs == 0 && moving == 0) return;
+        exit(mask);
+        if (notOurs != 0) {
+            int p = Long.numberOfTrailingZeros(notOurs);
+            throw new Unavailable(421, p, "Partition " + p + " is not on this shard.");
+        }
+        int p = Long.numberOfTrailingZeros(moving);
+        throw new Unavailable(503, p, "Partition " + p + " is moving to another shard. Try again.");
+    }
+
+    void exit(long mask) {
+        for (long m = mask; m != 0; m &= m - 1) active.decrementAndGet(Long.numberOfTrailingZeros(m));
+    }
+}
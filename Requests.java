@@ -0,0 +1,132 @@
+package bank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Request bodies, bound field by field straight from a JsonReader.
+ * Unknown fields are skipped; missing ones keep the defaults below.
+ * Account ids ("ACC1001") are parsed to their number here, once.
+ */
+final class Requests {
+
+    private Requests() { }
+
+    // POST /api/accounts
+    static final class CreateAccount {
+        String ownerName;
+        String email;
+        long   balance;            // paise
+        String type = "SAVINGS";
+        int    accountNumber;      // 0 unless the router picked it (shards only)
+
+        static CreateAccount read(JsonReader r) throws IOException {
+            CreateAccount req = new CreateAccount();
+            r.beginObject();
+            while (r.nextField()) {
+                if      (r.field("ownerName")) req.ownerName = r.nextString();
+                else if (r.field("accountNumber")) {
+                    String id = r.nextString();
+                    req.accountNumber = Bank.accountNo(id);
+                    if (req.accountNumber == 0) throw new RuntimeException("Invalid account number: " + id);
+                }
+                else if (r.field("email"))     req.email     = r.nextString();
+                else if (r.field("balance"))   req.balance   = r.nextAmount();
+                else if (r.field("type"))      req.type      = r.nextString();
+                else                           r.skipValue();
+            }
+            r.end();
+            return req;
+        }
+    }
+
+    // POST /api/accounts/{id}/deposit and /withdraw
+    static final class Movement {
+        long    amount;            // paise
+        boolean hasAmount;
+        String  note;
+
+        static Movement read(JsonReader r, String defaultNote) throws IOException {
+            Movement req = new Movement();
+            req.note = defaultNote;
+            r.beginObject();
+            while (r.nextField()) {
+                if (r.field("amount")) {
+                    req.amount    = r.nextAmount();
+                    req.hasAmount = true;
+                } else if (r.field("note")) {
+                    req.note = r.nextString();
+                } else {
+                    r.skipValue();
+                }
+            }
+            r.end();
+            if (!req.hasAmount) throw new RuntimeException("Amount is required.");
+            return req;
+        }
+    }
+
+    // POST /api/transfers
+    static final class Transfer {
+        int    from;               // account numbers
+        int    to;
+        long   amount;             // paise
+        String note = "Transfer";
+
+        static Transfer read(JsonReader r) throws IOException {
+            Transfer req = new Transfer();
+            boolean hasAmount = false;
+            r.beginObject();
+            while (r.nextField()) {
+                if      (r.field("from"))   req.from = Bank.accountNo(r.nextString());
+                else if (r.field("to"))     req.to   = Bank.accountNo(r.nextString());
+                else if (r.field("note"))   req.note = r.nextString();
+                else if (r.field("amount")) { req.amount = r.nextAmount(); hasAmount = true; }
+                else                        r.skipValue();
+            }
+            r.end();
+            if (!hasAmount) throw new RuntimeException("Amount is required.");
+            return req;
+        }
+    }
+
+    // POST /api/batch — either [...] or {"operations":[...]}
+    static List<BatchOp> readBatch(JsonReader r) throws IOException {
+        List<BatchOp> ops = new ArrayList<>();
+        if (r.peek() == '[') {
+            readOps(r, ops);
+        } else {
+            r.beginObject();
+            while (r.nextField()) {
+                if (r.field("operations")) readOps(r, ops);
+                else                       r.skipValue();
+            }
+        }
+        r.end();
+        return ops;
+    }
+
+    private static void readOps(JsonReader r, List<BatchOp> ops) throws IOException {
+        r.beginArray();
+        while (r.nextElement()) {
+            if (ops.size() == Bank.MAX_BATCH) throw new RuntimeException("A batch can have at most " + Bank.MAX_BATCH + " operations.");
+            String  type = "", note = "";
+            int     account = 0, to = 0;
+            long    amount = 0;
+            boolean hasAmount = false;
+            r.beginObject();
+            while (r.nextField()) {
+                if      (r.field("type"))    type    = r.nextString();
+                else if (r.field("account")) account = Bank.accountNo(r.nextString());
+                else if (r.field("to"))      to      = Bank.accountNo(r.nextString());
+                else if (r.field("note"))    note    = r.nextString();
+                else if (r.field("amount"))  { amount = r.nextAmount(); hasAmount = true; }
+                else                         r.skipValue();
+            }
+            if (!hasAmount) throw new RuntimeException("Operation " + ops.size() + ": Amount is required.");
+            ops.add(new BatchOp(type == null ? "" : type.toUpperCase(Locale.ROOT), account, to, amount, note));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package bank;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * ResponseBody — where a JsonWriter's bytes go for an HTTP response.
+ *
+ * The headers can only be sent once we know how the body will be framed,
+ * so that is decided when the first bytes arrive:
+ *
+ *   whole body fits in one buffer ─┬─ small, or no gzip → Content-Length, sent as is
+ *                                  └─ client accepts gzip → gzip, chunked
+ *   buffer filled up (big list)   ─── chunked (gzip'ed if accepted), streamed
+ *                                     buffer by buffer
+ *
+ * Tiny bodies aren't worth compressing: the gzip header alone is 18 bytes.
+ */
+public class ResponseBody implements JsonWriter.Target {
+
+    static final int GZIP_MIN = 1024;
+
+    private final HttpExchange ex;
+    private final int status;
+    private final boolean gzip;
+    private OutputStream out; // set once headers are sent
+
+    public ResponseBody(HttpExchange ex, int status, String contentType) {
+        this.ex     = ex;
+        this.status = status;
+        this.gzip   = acceptsGzip(ex);
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.getResponseHeaders().set("Vary", "Accept-Encoding");
+    }
+
+    // A JsonWriter for an application/json response
+    static JsonWriter json(HttpExchange ex, int status) {
+        return new JsonWriter(new ResponseBody(ex, status, "application/json"));
+    }
+
+    @Override
+    public void write(byte[] b, int len, boolean last) throws IOException {
+        if (out == null) start(len, last);
+        if (len > 0) out.write(b, 0, len);
+        if (last) out.close(); // ends the gzip stream and the exchange
+    }
+
+    private void start(int len, boolean last) throws IOException {
+        if (last && (!gzip || len < GZIP_MIN)) {
+            ex.sendResponseHeaders(status, len == 0 ? -1 : len); // -1 = no body
+            out = ex.getResponseBody();
+        } else if (gzip) {
+            ex.getResponseHeaders().set("Content-Encoding", "gzip");
+            ex.sendResponseHeaders(status, 0); // 0 = chunked
+            out = new GZIPOutputStream(ex.getResponseBody(), 8192);
+        } else {
+            ex.sendResponseHeaders(status, 0);
+            out = ex.getResponseBody();
+        }
+    }
+
+    static boolean acceptsGzip(HttpExchange ex) {
+        return accepts(ex, "gzip");
+    }
+
+    // "Accept-Encoding: gzip, deflate, br" — but not "gzip;q=0"
+    static boolean accepts(HttpExchange ex, String coding) {
+        for (String header : ex.getRequestHeaders().getOrDefault("Accept-Encoding", java.util.Collections.emptyList())) {
+            for (String part : header.split(",")) {
+                String p = part.trim();
+                if (p.startsWith(coding) || p.startsWith("*")) {
+                    int q = p.indexOf("q=");
+                    if (q < 0 || !isZero(p.substring(q + 2).trim())) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // "0", "0.0", "0.000"
+    private static boolean isZero(String q) {
+        for (int i = 0; i < q.length(); i++) {
+            char c = q.charAt(i);
+            if (c != '0' && c != '.') return false;
+        }
+        return true;
+    }
+}
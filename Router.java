@@ -0,0 +1,906 @@
+package bank;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Router — one address in front of several shards. Each shard is a Server
+ * run with -Dbank.shard=true, holding some of the 64 Partitions.
+ *
+ *   java -Dbank.shards=http://localhost:8091,http://localhost:8092 -cp out bank.Router
+ *
+ *                        ┌──► shard A   partitions 0, 2, 4, ...
+ *   client ──► Router ───┤
+ *                        └──► shard B   partitions 1, 3, 5, ...
+ *
+ * Routes (the same API as Server):
+ *   /api/accounts/{id}/...      → the shard owning id's partition, as is
+ *   POST /api/accounts          → the router picks the number, then as above
+ *   POST /api/transfers, /batch → the one shard holding every account named;
+ *                                 a transfer between two shards is refused
+ *                                 (it would need a distributed transaction)
+ *   GET  /api/accounts          → asked of every shard and merged by number;
+ *        /api/search, /api/stats  the same, stats summed
+ *   /api/undo, /api/events,     → not here: they only make sense per shard
+ *   /api/metrics, /api/eod
+ *   GET  /api/shards            → the shards, who owns what, the rebalance
+ *   POST /api/shards            → add a shard and move partitions to it
+ *        {"url":"http://localhost:8093"}
+ *   /                           → the frontend, as Server serves it
+ *
+ * Who owns what:
+ *   At startup the router asks every shard (GET /api/shard). The highest
+ *   epoch wins each partition; a lower one is a stale copy left by a move
+ *   that was cut short, and is dropped. Partitions nobody claims go to the
+ *   shard with the fewest, so a brand-new cluster deals all 64 out in turn.
+ *   Every shard must answer: one that is down may hold the newest copy.
+ *
+ * Moving a partition, while requests keep coming:
+ *
+ *   old: freeze ── old: export ══stream══► new: import (epoch + 1)
+ *        ── table: partition → new ── old: drop
+ *
+ *   While it is frozen, writes to its accounts get 503 and the router
+ *   retries them for up to 10 s; the first retry after the switch goes to
+ *   the new shard. A 421 (not mine) means the table is out of date, so it
+ *   is read from the shards again before retrying.
+ *
+ * Only the router hands out account numbers, so run one per cluster.
+ * Listens on -Dbank.port (default 8081).
+ */
+public class Router {
+
+    private static final int PORT = Integer.getInteger("bank.port", 8081);
+
+    private static final int  DEFAULT_PAGE = 100;
+    private static final int  MAX_PAGE     = 1000;
+    private static final int  MERGE_PAGE   = 512;            // accounts read from a shard at a time
+    private static final long RETRY_NANOS  = 10_000_000_000L;
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    private final List<String> shards = new CopyOnWriteArrayList<>();
+    private volatile String[] owners = new String[Partitions.COUNT]; // partition → shard URL, replaced whole
+    private final long[] epochs = new long[Partitions.COUNT];        // guarded by this
+    private final AtomicInteger accountCounter = new AtomicInteger(1000);
+    private volatile Rebalance rebalance;                           // the running or last one
+
+    public Router(List<String> urls) {
+        for (String u : urls) shards.add(trimSlash(u.trim()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String list = System.getProperty("bank.shards", "");
+        if (list.isBlank()) {
+            System.err.println("Name the shards: -Dbank.shards=http://localhost:8091,http://localhost:8092");
+            System.exit(1);
+        }
+        Router router = new Router(Arrays.asList(list.split(",")));
+        router.discover(true);
+        router.start();
+    }
+
+    public void start() throws IOException {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true"); // see Server.start
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        server.createContext("/",              Server.frontend());
+        server.createContext("/api/accounts",  new AccountsHandler());
+        server.createContext("/api/search",    new SearchHandler());
+        server.createContext("/api/stats",     new StatsHandler());
+        server.createContext("/api/transfers", new TransferHandler());
+        server.createContext("/api/batch",     new BatchHandler());
+        server.createContext("/api/shards",    new ShardsHandler());
+        server.createContext("/api/undo",      ex -> Server.sendError(ex, 400,
+            "Undo needs an account behind a router: POST /api/accounts/{id}/undo."));
+        server.createContext("/api/events",    ex -> Server.sendError(ex, 404,
+            "Live updates come from each shard: GET /api/events there."));
+        server.createContext("/api/metrics",   ex -> Server.sendError(ex, 404,
+            "Metrics come from each shard: GET /api/metrics there."));
+        server.createContext("/api/eod",       ex -> Server.sendError(ex, 404,
+            "End of day runs on each shard: POST /api/eod there."));
+        server.setExecutor(Server.createExecutor(System.getProperty("bank.executor", "pool")));
+        server.start();
+        System.out.println("Router running at http://localhost:" + PORT + " in front of " + shards);
+    }
+
+    // ── Who owns what ────────────────────────────────────────────────────────
+
+    // One shard's answer to GET /api/shard
+    private static final class ShardInfo {
+        int    accountCounter;
+        long   accounts;
+        long[] epochs = new long[Partitions.COUNT]; // 0 = not owned
+        long   frozen;                              // bit p: partition p is frozen
+    }
+
+    /*
+     * Rebuild the table from what the shards say. With repair (at startup,
+     * when nothing is moving) it also drops stale copies, thaws partitions
+     * a crashed move left frozen, and hands out unowned partitions.
+     */
+    synchronized void discover(boolean repair) throws IOException, InterruptedException {
+        String[] owner = new String[Partitions.COUNT];
+        long[]   epoch = new long[Partitions.COUNT];
+        long     frozen = 0;
+        List<String[]> stale = new ArrayList<>(); // {shard, partition}
+
+        for (String s : shards) {
+            ShardInfo info = info(s);
+            accountCounter.accumulateAndGet(info.accountCounter, Math::max);
+            for (int p = 0; p < Partitions.COUNT; p++) {
+                long e = info.epochs[p];
+                if (e == 0) continue;
+                long b = 1L << p;
+                if (e > epoch[p]) {
+                    if (owner[p] != null) stale.add(new String[] { owner[p], String.valueOf(p) });
+                    owner[p] = s;
+                    epoch[p] = e;
+                    frozen   = (info.frozen & b) != 0 ? frozen | b : frozen & ~b; // the winner's state counts
+                } else {
+                    stale.add(new String[] { s, String.valueOf(p) });
+                }
+            }
+        }
+
+        if (repair) {
+            for (String[] st : stale) {
+                post(st[0], "/api/shard/partitions/" + st[1] + "/drop", null);
+                System.out.println("Dropped a stale copy of partition " + st[1] + " on " + st[0]);
+            }
+            for (long m = frozen; m != 0; m &= m - 1) {
+                int p = Long.numberOfTrailingZeros(m);
+                post(owner[p], "/api/shard/partitions/" + p + "/thaw", null);
+                System.out.println("Thawed partition " + p + " on " + owner[p] + ", left frozen by an unfinished move");
+            }
+            int unowned = 0;
+            for (String o : owner) if (o == null) unowned++;
+            if (unowned > 0 && unowned < Partitions.COUNT) {
+                System.out.println("Warning: " + unowned + " partitions have no owner; starting them empty.");
+            }
+            for (int p = 0; p < Partitions.COUNT; p++) {
+                if (owner[p] != null) continue;
+                String s = leastLoaded(owner, null);
+                post(s, "/api/shard/partitions/" + p + "/claim?epoch=1", null);
+                owner[p] = s;
+                epoch[p] = 1;
+            }
+        }
+
+        for (int p = 0; p < Partitions.COUNT; p++) {
+            if (owner[p] == null) throw new IOException("No shard owns partition " + p + ".");
+        }
+        System.arraycopy(epoch, 0, epochs, 0, Partitions.COUNT);
+        owners = owner;
+    }
+
+    private ShardInfo info(String shard) throws IOException, InterruptedException {
+        JsonReader r = reader(ok(shard, send(shard, "GET", "/api/shard", null)));
+        ShardInfo info = new ShardInfo();
+        r.beginObject();
+        while (r.nextField()) {
+            if      (r.field("accountCounter")) info.accountCounter = (int) r.nextLong();
+            else if (r.field("accounts"))       info.accounts       = r.nextLong();
+            else if (r.field("partitions")) {
+                r.beginArray();
+                while (r.nextElement()) {
+                    int p = -1;
+                    long e = 0;
+                    boolean frozen = false;
+                    r.beginObject();
+                    while (r.nextField()) {
+                        if      (r.field("partition")) p      = (int) r.nextLong();
+                        else if (r.field("epoch"))     e      = r.nextLong();
+                        else if (r.field("frozen"))    frozen = r.nextBoolean();
+                        else                           r.skipValue();
+                    }
+                    if (p < 0 || p >= Partitions.COUNT) throw new IOException(shard + " reported partition " + p);
+                    info.epochs[p] = e;
+                    if (frozen) info.frozen |= 1L << p;
+                }
+            } else {
+                r.skipValue();
+            }
+        }
+        return info;
+    }
+
+    // The shard owning the fewest partitions (never skip)
+    private String leastLoaded(String[] owner, String skip) {
+        String best = null;
+        int bestCount = Integer.MAX_VALUE;
+        for (String s : shards) {
+            if (s.equals(skip)) continue;
+            int n = count(owner, s);
+            if (n < bestCount) {
+                best = s;
+                bestCount = n;
+            }
+        }
+        return best;
+    }
+
+    private static int count(String[] owner, String shard) {
+        int n = 0;
+        for (String o : owner) if (shard.equals(o)) n++;
+        return n;
+    }
+
+    // ── Adding a shard ───────────────────────────────────────────────────────
+    /*
+     * Moves partitions one at a time from the busiest shard to the new one
+     * until it holds its share (64 / shards). Requests keep running; only
+     * the partition being moved pauses its writes, for as long as its
+     * accounts take to copy.
+     */
+    final class Rebalance implements Runnable {
+        final String target;
+        final long   started = System.currentTimeMillis();
+        volatile int    toMove;
+        volatile int    moved;
+        volatile long   accountsMoved;
+        volatile int    current = -1;   // partition being moved now
+        volatile String state   = "running";
+        volatile String error;
+
+        Rebalance(String target) {
+            this.target = target;
+        }
+
+        public void run() {
+            try {
+                int share = Partitions.COUNT / shards.size();
+                toMove = Math.max(0, share - count(owners, target));
+                while (moved < toMove) {
+                    String[] owner = owners;
+                    String from = busiest(owner);
+                    int part = -1;
+                    for (int p = 0; p < Partitions.COUNT && part < 0; p++) if (from.equals(owner[p])) part = p;
+                    current = part;
+                    long t0 = System.nanoTime();
+                    int n = move(part, from, target);
+                    accountsMoved += n;
+                    moved++;
+                    System.out.printf("Moved partition %d (%,d accounts) from %s to %s in %d ms%n",
+                                      part, n, from, target, (System.nanoTime() - t0) / 1_000_000);
+                }
+                current = -1;
+                state   = "done";
+            } catch (Exception e) {
+                error = e.getMessage();
+                state = "failed";
+                System.err.println("Rebalance onto " + target + " failed: " + e.getMessage());
+            }
+        }
+
+        private String busiest(String[] owner) {
+            String best = null;
+            int bestCount = -1;
+            for (String s : shards) {
+                int n = count(owner, s);
+                if (!s.equals(target) && n > bestCount) {
+                    best = s;
+                    bestCount = n;
+                }
+            }
+            return best;
+        }
+    }
+
+    // Move partition part from one shard to another; returns how many accounts went
+    private int move(int part, String from, String to) throws IOException, InterruptedException {
+        long epoch;
+        synchronized (this) {
+            epoch = epochs[part];
+        }
+        String base = "/api/shard/partitions/" + part;
+        ok(from, post(from, base + "/freeze", null));
+
+        int n;
+        try {
+            HttpResponse<InputStream> export = client.send(
+                HttpRequest.newBuilder(URI.create(from + base + "/export")).GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+            if (export.statusCode() != 200) {
+                export.body().close();
+                throw new IOException(from + " could not export partition " + part + " (" + export.statusCode() + ")");
+            }
+            HttpRequest imp = HttpRequest.newBuilder(URI.create(to + base + "/import?epoch=" + (epoch + 1)))
+                .timeout(Duration.ofMinutes(10))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofInputStream(export::body))
+                .build();
+            JsonReader r = reader(ok(to, client.send(imp, HttpResponse.BodyHandlers.ofByteArray())));
+            n = 0;
+            r.beginObject();
+            while (r.nextField()) {
+                if (r.field("accounts")) n = (int) r.nextLong();
+                else                     r.skipValue();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The import may have landed even though its answer didn't: then
+            // the new shard owns it at epoch + 1, and thawing the old copy
+            // would let two shards take writes for it.
+            if (!owns(to, part)) {
+                try {
+                    post(from, base + "/thaw", null);
+                } catch (IOException thawFailed) {
+                    e.addSuppressed(thawFailed);
+                }
+                throw e;
+            }
+            n = 0;
+        }
+
+        synchronized (this) {
+            String[] o = owners.clone();
+            o[part] = to;
+            owners = o;
+            epochs[part] = epoch + 1;
+        }
+        try {
+            ok(from, post(from, base + "/drop", null));
+        } catch (IOException e) {
+            System.err.println("Partition " + part + " left frozen on " + from + " (" + e.getMessage() +
+                               "); the router drops it at its next start");
+        }
+        return n;
+    }
+
+    private boolean owns(String shard, int part) {
+        try {
+            return info(shard).epochs[part] > 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // ── /api/shards ──────────────────────────────────────────────────────────
+    class ShardsHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            try {
+                if ("GET".equals(ex.getRequestMethod())) {
+                    String[] owner = owners;
+                    JsonWriter w = ResponseBody.json(ex, 200);
+                    w.beginObject().name("shards").beginArray();
+                    for (String s : shards) {
+                        w.beginObject().name("url").value(s).name("partitions").value(count(owner, s)).endObject();
+                    }
+                    w.endArray().name("owners").beginArray();
+                    for (String o : owner) w.value(shards.indexOf(o));
+                    w.endArray();
+                    Rebalance rb = rebalance;
+                    if (rb != null) {
+                        w.name("rebalance").beginObject()
+                         .name("target").value(rb.target)
+                         .name("state").value(rb.state)
+                         .name("partitionsMoved").value(rb.moved)
+                         .name("partitionsToMove").value(rb.toMove)
+                         .name("accountsMoved").value(rb.accountsMoved)
+                         .name("current").value(rb.current)
+                         .name("elapsedMs").value(System.currentTimeMillis() - rb.started)
+                         .name("error").value(rb.error)
+                         .endObject();
+                    }
+                    w.endObject();
+                    w.close();
+
+                } else if ("POST".equals(ex.getRequestMethod())) {
+                    String url = null;
+                    JsonReader r = reader(body(ex));
+                    r.beginObject();
+                    while (r.nextField()) {
+                        if (r.field("url")) url = r.nextString();
+                        else                r.skipValue();
+                    }
+                    r.end();
+                    if (url == null || !url.startsWith("http")) throw new RuntimeException("Give the new shard's url, e.g. http://localhost:8093");
+                    addShard(ex, trimSlash(url));
+
+                } else {
+                    Server.sendError(ex, 405, "Use GET or POST");
+                }
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    private synchronized void addShard(HttpExchange ex, String url) throws IOException, InterruptedException {
+        Rebalance running = rebalance;
+        if (running != null && "running".equals(running.state)) {
+            Server.sendError(ex, 409, "Already moving partitions to " + running.target + ".");
+            return;
+        }
+        if (shards.contains(url)) throw new RuntimeException(url + " is already a shard.");
+        ShardInfo info = info(url); // it must answer, and be empty
+        for (long e : info.epochs) {
+            if (e != 0) throw new RuntimeException(url + " already owns partitions; start it with an empty data directory.");
+        }
+        shards.add(url);
+        Rebalance rb = new Rebalance(url);
+        rebalance = rb;
+        Thread t = new Thread(rb, "rebalance");
+        t.setDaemon(true);
+        t.start();
+
+        JsonWriter w = ResponseBody.json(ex, 202);
+        w.beginObject().name("message").value("Added " + url + "; moving partitions to it. Follow along at GET /api/shards.")
+         .endObject();
+        w.close();
+    }
+
+    // ── /api/accounts and sub-routes ────────────────────────────────────────
+    class AccountsHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            String[] parts  = ex.getRequestURI().getPath().split("/"); // ["", "api", "accounts", ...]
+            String   method = ex.getRequestMethod();
+
+            try {
+                if (parts.length == 3 && "GET".equals(method)) {
+                    listAccounts(ex, Server.queryParams(ex));
+
+                } else if (parts.length == 3 && "POST".equals(method)) {
+                    Requests.CreateAccount req = Requests.CreateAccount.read(reader(body(ex)));
+                    if (req.accountNumber != 0) throw new RuntimeException("Account numbers are chosen by the bank.");
+                    int accNo = accountCounter.incrementAndGet();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+                    try (JsonWriter w = new JsonWriter((b, len, last) -> out.write(b, 0, len))) {
+                        w.beginObject()
+                         .name("accountNumber").value("ACC" + accNo)
+                         .name("ownerName").value(req.ownerName)
+                         .name("email").value(req.email)
+                         .name("balance").money(req.balance)
+                         .name("type").value(req.type)
+                         .endObject();
+                    }
+                    relay(ex, toOwner(accNo, "POST", "/api/accounts", out.toByteArray()));
+
+                } else if (parts.length == 4 || parts.length == 5) {
+                    // /api/accounts/{id} and /api/accounts/{id}/{action}, as they are
+                    byte[] body = "GET".equals(method) ? null : body(ex);
+                    relay(ex, toOwner(Bank.accountNo(parts[3]), method, pathAndQuery(ex), body));
+                }
+                if (ex.getResponseCode() == -1) Server.sendError(ex, 404, "Not found");
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    // GET /api/accounts — the same three shapes as Server, merged from every shard
+    private void listAccounts(HttpExchange ex, Map<String, String> q) throws IOException, InterruptedException {
+        String from = q.get("from");
+        String to   = q.get("to");
+        boolean stream = "true".equals(q.get("stream"));
+
+        if (!stream && (q.containsKey("limit") || q.containsKey("after"))) {
+            int limit = Math.min(Server.intParam(q, "limit", DEFAULT_PAGE), MAX_PAGE);
+            String after = q.get("after");
+            List<ShardCursor> cursors = cursors(after == null ? from : null, after, to, limit);
+            List<Account> page = new ArrayList<>(limit);
+            Account a;
+            while (page.size() < limit && (a = next(cursors)) != null) page.add(a);
+
+            String next = page.size() == limit ? page.get(page.size() - 1).accountNumber : null;
+            JsonWriter w = ResponseBody.json(ex, 200);
+            w.beginObject().name("accounts");
+            Server.writeAccounts(w, page);
+            w.name("next").value(next).endObject();
+            w.close();
+            return;
+        }
+
+        // Every account: one page per shard in memory at a time, written as merged
+        int limit = stream ? Server.intParam(q, "limit", Integer.MAX_VALUE) : Integer.MAX_VALUE;
+        List<ShardCursor> cursors = cursors(from, null, to, MERGE_PAGE);
+        JsonWriter w = ResponseBody.json(ex, 200);
+        w.beginArray();
+        Account a;
+        for (int sent = 0; sent < limit && (a = next(cursors)) != null; sent++) Server.writeAccount(w, a);
+        w.endArray();
+        w.close();
+    }
+
+    /*
+     * DSA: k-way merge
+     *
+     *   Each shard returns its accounts sorted by number, so the next
+     *   account overall is the smallest of the k heads:
+     *
+     *     shard A: ACC1001  ACC1004  ACC1006 ...
+     *     shard B: ACC1002  ACC1003  ACC1009 ...     → ACC1001, 1002, 1003 ...
+     *
+     *   With a handful of shards a linear scan of the heads beats a heap.
+     *   Each shard is read a page at a time, when its head runs out.
+     */
+    private final class ShardCursor {
+        final String shard;
+        final String to;
+        final int    pageSize;
+        final ArrayDeque<Account> buffered = new ArrayDeque<>();
+        String  from;   // the first page only
+        String  after;  // then: strictly after the last one read
+        boolean done;
+
+        ShardCursor(String shard, String from, String after, String to, int pageSize) {
+            this.shard    = shard;
+            this.from     = from;
+            this.after    = after;
+            this.to       = to;
+            this.pageSize = pageSize;
+        }
+
+        Account head() throws IOException, InterruptedException {
+            if (buffered.isEmpty() && !done) fill();
+            return buffered.peekFirst();
+        }
+
+        private void fill() throws IOException, InterruptedException {
+            StringBuilder path = new StringBuilder("/api/accounts?limit=").append(pageSize);
+            if (after != null)     path.append("&after=").append(encode(after));
+            else if (from != null) path.append("&from=").append(encode(from));
+            if (to != null)        path.append("&to=").append(encode(to));
+
+            JsonReader r = reader(ok(shard, send(shard, "GET", path.toString(), null)));
+            String next = null;
+            r.beginObject();
+            while (r.nextField()) {
+                if      (r.field("accounts")) readAccounts(r, buffered);
+                else if (r.field("next"))     next = r.nextString();
+                else                          r.skipValue();
+            }
+            done = next == null;
+            if (!buffered.isEmpty()) after = buffered.peekLast().accountNumber;
+        }
+    }
+
+    private List<ShardCursor> cursors(String from, String after, String to, int pageSize) {
+        List<ShardCursor> cursors = new ArrayList<>();
+        for (String s : shards) cursors.add(new ShardCursor(s, from, after, to, pageSize));
+        return cursors;
+    }
+
+    // The smallest head of all cursors, taken off it; null when all are used up
+    private static Account next(List<ShardCursor> cursors) throws IOException, InterruptedException {
+        ShardCursor min = null;
+        for (ShardCursor c : cursors) {
+            Account h = c.head();
+            if (h != null && (min == null || h.number < min.head().number)) min = c;
+        }
+        return min == null ? null : min.buffered.pollFirst();
+    }
+
+    private static void readAccounts(JsonReader r, java.util.Collection<Account> into) throws IOException {
+        r.beginArray();
+        while (r.nextElement()) {
+            String id = null, name = null, email = null, type = null;
+            long balance = 0;
+            r.beginObject();
+            while (r.nextField()) {
+                if      (r.field("accountNumber")) id      = r.nextString();
+                else if (r.field("ownerName"))     name    = r.nextString();
+                else if (r.field("email"))         email   = r.nextString();
+                else if (r.field("balance"))       balance = r.nextAmount();
+                else if (r.field("type"))          type    = r.nextString();
+                else                               r.skipValue();
+            }
+            into.add(new Account(Bank.accountNo(id), name, email, balance, type));
+        }
+    }
+
+    // ── /api/search ──────────────────────────────────────────────────────────
+    class SearchHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            try {
+                Map<String, String> q = Server.queryParams(ex);
+                int limit = Math.min(Server.intParam(q, "limit", DEFAULT_PAGE), MAX_PAGE);
+                String path = "/api/search?name=" + encode(q.getOrDefault("name", "")) + "&limit=" + limit;
+
+                List<Account> found = new ArrayList<>();
+                for (HttpResponse<byte[]> r : everyShard(path)) readAccounts(reader(r), found);
+                found.sort(Comparator.comparingInt(a -> a.number));
+
+                JsonWriter w = ResponseBody.json(ex, 200);
+                Server.writeAccounts(w, found.subList(0, Math.min(limit, found.size())));
+                w.close();
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    // ── /api/stats ───────────────────────────────────────────────────────────
+    // Every shard's stats, added up field by field
+    class StatsHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            try {
+                long accounts = 0, balance = 0, undo = 0, transactions = 0;
+                Map<String, long[]> byType = new TreeMap<>(); // type → {accounts, balance}
+                long[] minute = new long[4], hour = new long[4];
+
+                for (HttpResponse<byte[]> resp : everyShard("/api/stats")) {
+                    JsonReader r = reader(resp);
+                    r.beginObject();
+                    while (r.nextField()) {
+                        if      (r.field("totalAccounts"))     accounts     += r.nextLong();
+                        else if (r.field("totalBalance"))      balance      += r.nextAmount();
+                        else if (r.field("undoStackSize"))     undo         += r.nextLong();
+                        else if (r.field("totalTransactions")) transactions += r.nextLong();
+                        else if (r.field("lastMinute"))        addWindow(r, minute);
+                        else if (r.field("lastHour"))          addWindow(r, hour);
+                        else if (r.field("byType")) {
+                            r.beginObject();
+                            while (r.nextField()) {
+                                long[] t = byType.computeIfAbsent(r.fieldName(), k -> new long[2]);
+                                r.beginObject();
+                                while (r.nextField()) {
+                                    if      (r.field("accounts")) t[0] += r.nextLong();
+                                    else if (r.field("balance"))  t[1] += r.nextAmount();
+                                    else                          r.skipValue();
+                                }
+                            }
+                        } else {
+                            r.skipValue();
+                        }
+                    }
+                }
+
+                JsonWriter w = ResponseBody.json(ex, 200);
+                w.beginObject()
+                 .name("totalAccounts").value(accounts)
+                 .name("totalBalance").money(balance)
+                 .name("undoStackSize").value(undo)
+                 .name("totalTransactions").value(transactions)
+                 .name("shards").value(shards.size());
+                w.name("byType").beginObject();
+                for (Map.Entry<String, long[]> e : byType.entrySet()) {
+                    w.name(e.getKey()).beginObject()
+                     .name("accounts").value(e.getValue()[0])
+                     .name("balance").money(e.getValue()[1])
+                     .endObject();
+                }
+                w.endObject();
+                writeWindow(w.name("lastMinute"), minute);
+                writeWindow(w.name("lastHour"),   hour);
+                w.endObject();
+                w.close();
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+
+        private void addWindow(JsonReader r, long[] t) throws IOException {
+            r.beginObject();
+            while (r.nextField()) {
+                if      (r.field("deposits"))         t[0] += r.nextLong();
+                else if (r.field("depositAmount"))    t[1] += r.nextAmount();
+                else if (r.field("withdrawals"))      t[2] += r.nextLong();
+                else if (r.field("withdrawalAmount")) t[3] += r.nextAmount();
+                else                                  r.skipValue();
+            }
+        }
+
+        private void writeWindow(JsonWriter w, long[] t) throws IOException {
+            w.beginObject()
+             .name("deposits").value(t[0])
+             .name("depositAmount").money(t[1])
+             .name("withdrawals").value(t[2])
+             .name("withdrawalAmount").money(t[3])
+             .endObject();
+        }
+    }
+
+    // ── /api/transfers and /api/batch ────────────────────────────────────────
+    // Forwarded when one shard holds every account involved
+    class TransferHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                Server.sendError(ex, 405, "Use POST");
+                return;
+            }
+            try {
+                byte[] body = body(ex);
+                Requests.Transfer req = Requests.Transfer.read(reader(body));
+                sameShard(req.from, req.to);
+                relay(ex, toOwner(req.from, "POST", "/api/transfers", body));
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    class BatchHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                Server.sendError(ex, 405, "Use POST");
+                return;
+            }
+            try {
+                byte[] body = body(ex);
+                List<BatchOp> ops = Requests.readBatch(reader(body));
+                int first = ops.isEmpty() ? 0 : ops.get(0).account;
+                for (BatchOp op : ops) {
+                    sameShard(first, op.account);
+                    sameShard(first, op.to);
+                }
+                relay(ex, toOwner(first, "POST", "/api/batch", body));
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    private void sameShard(int a, int b) {
+        if (a == 0 || b == 0) return; // not an account: the shard says so
+        String[] owner = owners;
+        if (!owner[Partitions.of(a)].equals(owner[Partitions.of(b)])) {
+            throw new RuntimeException("ACC" + a + " and ACC" + b + " are on different shards; " +
+                                       "moving money between shards is not supported.");
+        }
+    }
+
+    // ── Talking to shards ────────────────────────────────────────────────────
+
+    // Send to whichever shard owns accNo, following it if it moves
+    private HttpResponse<byte[]> toOwner(int accNo, String method, String path, byte[] body)
+            throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + RETRY_NANOS;
+        while (true) {
+            String shard = owners[Partitions.of(accNo)];
+            HttpResponse<byte[]> r = send(shard, method, path, body);
+            boolean partitionProblem = r.headers().firstValue("X-Partition").isPresent();
+            if (!partitionProblem || System.nanoTime() > deadline) return r;
+            if (r.statusCode() == 421) discover(false); // our table is out of date
+            else                       Thread.sleep(20); // moving: the switch is close
+        }
+    }
+
+    private HttpResponse<byte[]> send(String shard, String method, String path, byte[] body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(shard + path)).timeout(Duration.ofSeconds(30));
+        if (body == null) {
+            b.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            b.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+        try {
+            return client.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new ShardDown(shard, e);
+        }
+    }
+
+    private HttpResponse<byte[]> post(String shard, String path, byte[] body) throws IOException, InterruptedException {
+        return send(shard, "POST", path, body);
+    }
+
+    // GET path from every shard at once; all of them must answer
+    private List<HttpResponse<byte[]>> everyShard(String path) throws IOException {
+        List<String> targets = new ArrayList<>(shards);
+        List<CompletableFuture<HttpResponse<byte[]>>> pending = new ArrayList<>();
+        for (String s : targets) {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(s + path)).timeout(Duration.ofSeconds(30)).GET().build();
+            pending.add(client.sendAsync(req, HttpResponse.BodyHandlers.ofByteArray()));
+        }
+        List<HttpResponse<byte[]>> all = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                all.add(ok(targets.get(i), pending.get(i).join()));
+            } catch (CompletionException e) {
+                throw new ShardDown(targets.get(i), e.getCause());
+            }
+        }
+        return all;
+    }
+
+    // A shard that can't be reached, or answered something we can't use
+    private static final class ShardDown extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ShardDown(String shard, Throwable cause) {
+            super("Shard " + shard + " is not answering.", cause);
+        }
+
+        ShardDown(String shard, int status, String body) {
+            super("Shard " + shard + " answered " + status + ": " + body);
+        }
+    }
+
+    private static <T> HttpResponse<T> ok(String shard, HttpResponse<T> r) throws IOException {
+        if (r.statusCode() / 100 != 2) {
+            Object body = r.body();
+            String text = body instanceof byte[] ? new String((byte[]) body, StandardCharsets.UTF_8) : "";
+            throw new ShardDown(shard, r.statusCode(), text);
+        }
+        return r;
+    }
+
+    // Pass a shard's answer back to the client unchanged
+    private static void relay(HttpExchange ex, HttpResponse<byte[]> r) throws IOException {
+        byte[] body = r.body();
+        r.headers().firstValue("Content-Type").ifPresent(t -> ex.getResponseHeaders().set("Content-Type", t));
+        r.headers().firstValue("Retry-After").ifPresent(t -> ex.getResponseHeaders().set("Retry-After", t));
+        ex.sendResponseHeaders(r.statusCode(), body.length == 0 ? -1 : body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Bad input is a 400 with its message, as in Server; a shard that is
+    // down or failing is a 502; anything else a 500.
+    private static void sendFailure(HttpExchange ex, Exception e) throws IOException {
+        if (ex.getResponseCode() != -1) { // already streaming: drop the connection
+            ex.close();
+            return;
+        }
+        if (e.getClass() == RuntimeException.class || e instanceof IllegalArgumentException) {
+            Server.sendError(ex, 400, e.getMessage());
+            return;
+        }
+        if (e instanceof ShardDown) {
+            Server.sendError(ex, 502, e.getMessage());
+            return;
+        }
+        System.err.println("Request " + ex.getRequestMethod() + " " + ex.getRequestURI() + " failed:");
+        e.printStackTrace();
+        Server.sendError(ex, 500, "Internal server error");
+    }
+
+    private static byte[] body(HttpExchange ex) throws IOException {
+        byte[] b = ex.getRequestBody().readNBytes(JsonReader.MAX_BODY + 1);
+        if (b.length > JsonReader.MAX_BODY) throw new RuntimeException("Request body too large.");
+        return b;
+    }
+
+    private static JsonReader reader(byte[] body) {
+        return new JsonReader(new ByteArrayInputStream(body), body.length);
+    }
+
+    private static JsonReader reader(HttpResponse<byte[]> r) {
+        return reader(r.body());
+    }
+
+    private static String pathAndQuery(HttpExchange ex) {
+        URI u = ex.getRequestURI();
+        return u.getRawQuery() == null ? u.getRawPath() : u.getRawPath() + "?" + u.getRawQuery();
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -7,8 +7,14 @@ import com.sun.net.httpserver.Filter;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * Server.java — HTTP server that exposes the Bank as a REST API.
@@ -18,35 +24,189 @@ import java.util.*;
  *
  * Routes:
  *   GET  /                             → serves frontend/index.html
+ *   GET  /style.css, ...               → any other file under frontend/ (see StaticAssets)
  *   GET  /api/accounts                 → list all accounts
+ *        ?limit=50&after=ACC1050       → one page, plus the cursor for the next
+ *        ?from=ACC1001&to=ACC1100      → account number range (inclusive)
+ *        ?stream=true                  → whole list, written as it is read
  *   POST /api/accounts                 → create account
  *   GET  /api/accounts/{id}            → get one account
  *   POST /api/accounts/{id}/deposit    → deposit
  *   POST /api/accounts/{id}/withdraw   → withdraw
  *   GET  /api/accounts/{id}/history    → transaction history
+ *        ?limit=50&beforeTxId=TX900    → one page, newest first, plus the next cursor
+ *        &from=...&to=...              → only between these times (epoch millis)
+ *   POST /api/accounts/{id}/undo       → undo last transaction on that account
  *   POST /api/undo                     → undo last transaction
  *   GET  /api/search?name=...          → search by name
+ *        &limit=20                     → at most 20 results (default 100)
  *   GET  /api/stats                    → bank stats
+ *   GET  /api/metrics                  → per-route latency, status and byte counts, Bank op timings
+ *        ?format=prometheus            → the same in Prometheus text format
+ *   GET  /api/events                   → live changes as Server-Sent Events (see EventHub)
+ *        ?account=ACC1001,ACC1002      → only changes touching these accounts
+ *   POST /api/transfers                → move money between two accounts
+ *        {"from":"ACC1001","to":"ACC1002","amount":"10.00","note":"..."}
+ *   POST /api/batch                    → many deposits/withdrawals/transfers, all or nothing
+ *        {"operations":[{"type":"deposit","account":"ACC1001","amount":"10.00","note":"..."},
+ *                       {"type":"transfer","account":"ACC1001","to":"ACC1002","amount":"5"}, ...]}
+ *
+ * Responses are encoded by a JsonWriter straight into a reused buffer and
+ * gzip'ed when the client sends Accept-Encoding: gzip (see ResponseBody).
+ *
+ * Threads:
+ *   Requests run on an executor chosen at startup with -Dbank.executor=
+ *     pool     → fixed pool of -Dbank.threads workers (default: one per core)
+ *     virtual  → one virtual thread per request (needs Java 21+,
+ *                falls back to "pool" on older JVMs)
+ *     single   → the HttpServer dispatcher thread, as before
+ *   Bank is thread-safe, so any of these is correct.
+ *
+ *   /api/events streams are written by EventHub's own pool of
+ *   -Dbank.events.writers threads (default 4), not by request threads;
+ *   at most -Dbank.events.max streams (default 10000) are open at once.
+ *
+ *   How Bank applies changes is chosen with -Dbank.mode=
+ *     locked   → on the request thread, under per-account stripe locks (default)
+ *     engine   → handed to a single writer thread through a ring buffer of
+ *                -Dbank.engine.ring slots (default 65536); see LedgerEngine
+ *
+ * Storage:
+ *   By default every change is journaled to -Dbank.data=data and replayed
+ *   on the next start. -Dbank.journal=false keeps everything in memory.
+ *   -Dbank.journal.batchMicros sets how long a journal batch waits for
+ *   more writes before its fsync (default 1000). Every
+ *   -Dbank.snapshot.intervalSec (default 300, 0 = never) a background
+ *   thread writes a Snapshot so the next start replays only the tail.
+ *
+ * End of day (see EndOfDay):
+ *   POST /api/eod?date=2026-10-17      → pay a day's interest and write statements,
+ *                                        in the background (date defaults to today)
+ *   GET  /api/eod                      → progress and throughput of the latest run
+ *   -Dbank.eod.rates=SAVINGS:4,CURRENT:0.5  yearly interest % per account type
+ *   -Dbank.eod.dir (default <bank.data>/eod), -Dbank.eod.threads (default: one per core)
+ *
+ * Sharding:
+ *   -Dbank.shard=true runs this server as one shard behind a Router: it
+ *   starts empty, holds only the Partitions it owns (saved next to the
+ *   journal) and takes account numbers from the router. Writes to an
+ *   account it doesn't own get 421, to one that is moving 503 with
+ *   Retry-After; both carry an X-Partition header. It adds:
+ *     GET  /api/shard                          → owned partitions and their epochs
+ *     POST /api/shard/partitions/{p}/claim?epoch=1  → own an empty partition
+ *     POST /api/shard/partitions/{p}/freeze    → stop writes to it
+ *     POST /api/shard/partitions/{p}/thaw      → allow them again
+ *     GET  /api/shard/partitions/{p}/export    → its accounts, snapshot format
+ *     POST /api/shard/partitions/{p}/import?epoch=2  → load an export, then own it
+ *     POST /api/shard/partitions/{p}/drop      → give it up and forget its accounts
+ *
+ * Listens on -Dbank.port (default 8081).
  */
 public class Server {
 
-    private static final int PORT = 8081;
-    private final Bank bank = new Bank();
+    private static final int PORT = Integer.getInteger("bank.port", 8081);
+
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE     = 1000;
+    private static final int STREAM_PAGE  = 512;
+
+    private final Bank bank;
+    private final Metrics metrics;
+    private final EventHub events;
+    private final EndOfDay endOfDay;
+
+    public Server() throws IOException {
+        bank    = startMode(openBank());
+        metrics = new Metrics(bank);
+        events  = new EventHub(Integer.getInteger("bank.events.writers", 4),
+                               Integer.getInteger("bank.events.max", 10_000));
+        bank.setListener(events);
+        endOfDay = new EndOfDay(bank,
+            java.nio.file.Paths.get(System.getProperty("bank.eod.dir", System.getProperty("bank.data", "data") + "/eod")),
+            System.getProperty("bank.eod.rates", "SAVINGS:4"),
+            Integer.getInteger("bank.eod.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static Bank openBank() throws IOException {
+        boolean shard = Boolean.getBoolean("bank.shard");
+        if (!Boolean.parseBoolean(System.getProperty("bank.journal", "true"))) {
+            return shard ? new Bank(Partitions.inMemory()) : new Bank();
+        }
+
+        java.nio.file.Path dir = java.nio.file.Paths.get(System.getProperty("bank.data", "data"));
+        long start = System.nanoTime();
+        java.nio.file.Files.createDirectories(dir);
+        Bank bank = new Bank(dir, Long.getLong("bank.journal.batchMicros", 1000), shard ? Partitions.load(dir) : null);
+        System.out.printf("Loaded journal from %s in %d ms%n", dir.toAbsolutePath(),
+                          (System.nanoTime() - start) / 1_000_000);
+        return bank;
+    }
+
+    private static Bank startMode(Bank bank) {
+        String mode = System.getProperty("bank.mode", "locked");
+        switch (mode) {
+            case "locked":
+                return bank;
+            case "engine":
+                bank.startEngine(Integer.getInteger("bank.engine.ring", 65_536));
+                return bank;
+            default:
+                throw new IllegalArgumentException("Unknown bank.mode: " + mode);
+        }
+    }
 
     public void start() throws IOException {
+        // HttpServer leaves Nagle's algorithm on unless told otherwise: a
+        // response written in two pieces (headers, then body) then waits
+        // for the client's delayed ACK, ~40 ms per request. Read once,
+        // when the first server is created, so it must be set before that.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
 
         // Attach routes
-        server.createContext("/",            new FrontendHandler());
-        server.createContext("/api/accounts",new AccountsHandler());
-        server.createContext("/api/undo",    new UndoHandler());
-        server.createContext("/api/search",  new SearchHandler());
-        server.createContext("/api/stats",   new StatsHandler());
+        route(server, "/",            frontend());
+        route(server, "/api/accounts",new AccountsHandler());
+        route(server, "/api/undo",    new UndoHandler());
+        route(server, "/api/search",  new SearchHandler());
+        route(server, "/api/stats",   new StatsHandler());
+        route(server, "/api/batch",   new BatchHandler());
+        route(server, "/api/transfers", new TransferHandler());
+        route(server, "/api/metrics", new MetricsHandler());
+        route(server, "/api/events",  new EventsHandler());
+        route(server, "/api/eod",     new EndOfDayHandler());
+        if (bank.partitions() != null) route(server, "/api/shard", new ShardHandler());
 
-        server.setExecutor(null);
+        String mode = System.getProperty("bank.executor", "pool");
+        ExecutorService executor = createExecutor(mode);
+        server.setExecutor(executor);
+        metrics.watchPool(executor);
         server.start();
 
-        System.out.println("Server running at http://localhost:" + PORT);
+        long every = Long.getLong("bank.snapshot.intervalSec", 300);
+        if (bank.isJournaled() && every > 0) {
+            ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshots.scheduleWithFixedDelay(this::takeSnapshot, every, every, TimeUnit.SECONDS);
+        }
+
+        // Flush the journal on Ctrl+C
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            try {
+                bank.close();
+            } catch (IOException e) {
+                System.err.println("Closing journal failed: " + e.getMessage());
+            }
+        }));
+
+        System.out.println("Server running at http://localhost:" + PORT + " (executor: " + mode +
+                           ", bank: " + (bank.isEngineMode() ? "engine" : "locked") +
+                           (bank.partitions() != null ? ", shard" : "") + ")");
         System.out.println("Open that URL in your browser.");
     }
 
@@ -54,27 +214,68 @@ public class Server {
         new Server().start();
     }
 
-    // ── Serve the HTML frontend ──────────────────────────────────────────────
-    class FrontendHandler implements HttpHandler {
-        public void handle(HttpExchange ex) throws IOException {
-            // Only handle GET /
-            if (!ex.getRequestURI().getPath().equals("/")) {
-                respond(ex, 404, "text/plain", "Not found");
-                return;
-            }
-            File file = new File("frontend/index.html");
-            if (!file.exists()) {
-                respond(ex, 404, "text/plain", "Run from project root. Missing: frontend/index.html");
-                return;
+    private void takeSnapshot() {
+        try {
+            long start = System.nanoTime();
+            if (bank.snapshotIfChanged()) {
+                System.out.printf("Snapshot written in %d ms%n", (System.nanoTime() - start) / 1_000_000);
             }
-            byte[] html = java.nio.file.Files.readAllBytes(file.toPath());
-            ex.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-            ex.sendResponseHeaders(200, html.length);
-            ex.getResponseBody().write(html);
-            ex.getResponseBody().close();
+        } catch (Exception e) {
+            System.err.println("Snapshot failed: " + e.getMessage());
+        }
+    }
+
+    // Every route goes through the Metrics filter
+    private void route(HttpServer server, String path, HttpHandler handler) {
+        server.createContext(path, handler).getFilters().add(metrics);
+    }
+
+    // Frontend files from -Dbank.frontend (default "frontend"), reloaded when edited
+    static StaticAssets frontend() throws IOException {
+        StaticAssets assets = new StaticAssets(java.nio.file.Paths.get(System.getProperty("bank.frontend", "frontend")));
+        assets.load();
+        assets.watch();
+        return assets;
+    }
+
+    // ── Request executor ─────────────────────────────────────────────────────
+    @SuppressWarnings("fallthrough") // "virtual" falls back to "pool" on purpose
+    static ExecutorService createExecutor(String mode) {
+        switch (mode) {
+            case "single":
+                return null; // HttpServer runs handlers on its own dispatcher thread
+            case "virtual":
+                try {
+                    // Looked up reflectively so the code still compiles on Java 17
+                    return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.out.println("Virtual threads need Java 21+, using a thread pool instead.");
+                }
+                // fall through
+            case "pool":
+                int threads = Integer.getInteger("bank.threads", Runtime.getRuntime().availableProcessors());
+                return newBoundedPool(threads, Integer.getInteger("bank.queue", 10_000));
+            default:
+                throw new IllegalArgumentException("Unknown bank.executor: " + mode);
         }
     }
 
+    // Fixed-size pool with a bounded queue, so a burst can't eat the heap.
+    // When the queue is full the dispatcher thread runs the request itself,
+    // which slows down accepting new connections — natural back-pressure.
+    private static ExecutorService newBoundedPool(int threads, int queue) {
+        AtomicInteger n = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(queue),
+            r -> {
+                Thread t = new Thread(r, "http-worker-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
     // ── /api/accounts and sub-routes ────────────────────────────────────────
     class AccountsHandler implements HttpHandler {
         public void handle(HttpExchange ex) throws IOException {
@@ -85,155 +286,529 @@ public class Server {
                 if (parts.length == 3) {
                     // /api/accounts
                     if ("GET".equals(method)) {
-                        sendJson(ex, 200, accountListJson(bank.getAllAccounts()));
+                        listAccounts(ex, queryParams(ex));
 
                     } else if ("POST".equals(method)) {
-                        Map<String, String> body = readBody(ex);
-                        Account acc = bank.createAccount(
-                            body.get("ownerName"),
-                            body.get("email"),
-                            Double.parseDouble(body.getOrDefault("balance", "0")),
-                            body.getOrDefault("type", "SAVINGS")
-                        );
-                        sendJson(ex, 201, accountJson(acc));
+                        Requests.CreateAccount req = Requests.CreateAccount.read(readBody(ex));
+                        Account acc = req.accountNumber != 0
+                            ? bank.createAccount(req.accountNumber, req.ownerName, req.email, req.balance, req.type)
+                            : bank.createAccount(req.ownerName, req.email, req.balance, req.type);
+                        sendAccount(ex, 201, acc);
                     }
 
                 } else if (parts.length == 4) {
                     // /api/accounts/{id}
-                    String id  = parts[3];
+                    int id = Bank.accountNo(parts[3]);
+                    checkOwns(id);
                     Account acc = bank.getAccount(id);
-                    if (acc == null) { sendJson(ex, 404, "{\"error\":\"Account not found\"}"); return; }
-                    sendJson(ex, 200, accountJson(acc));
+                    if (acc == null) { sendError(ex, 404, "Account not found"); return; }
+                    sendAccount(ex, 200, acc);
 
                 } else if (parts.length == 5) {
                     // /api/accounts/{id}/deposit  or  /api/accounts/{id}/withdraw  or  /api/accounts/{id}/history
-                    String id     = parts[3];
+                    int    id     = Bank.accountNo(parts[3]);
                     String action = parts[4];
+                    checkOwns(id);
 
                     if ("history".equals(action)) {
-                        sendJson(ex, 200, txListJson(bank.getHistory(id)));
+                        listHistory(ex, id, queryParams(ex));
 
                     } else if ("deposit".equals(action) && "POST".equals(method)) {
-                        Map<String, String> body = readBody(ex);
-                        bank.deposit(id, Double.parseDouble(body.get("amount")), body.getOrDefault("note", "Deposit"));
-                        sendJson(ex, 200, accountJson(bank.getAccount(id)));
+                        Requests.Movement req = Requests.Movement.read(readBody(ex), "Deposit");
+                        bank.deposit(id, req.amount, req.note);
+                        sendAccount(ex, 200, bank.getAccount(id));
+
+                    } else if ("undo".equals(action) && "POST".equals(method)) {
+                        sendMessage(ex, bank.undo(id));
 
                     } else if ("withdraw".equals(action) && "POST".equals(method)) {
-                        Map<String, String> body = readBody(ex);
-                        bank.withdraw(id, Double.parseDouble(body.get("amount")), body.getOrDefault("note", "Withdrawal"));
-                        sendJson(ex, 200, accountJson(bank.getAccount(id)));
+                        Requests.Movement req = Requests.Movement.read(readBody(ex), "Withdrawal");
+                        bank.withdraw(id, req.amount, req.note);
+                        sendAccount(ex, 200, bank.getAccount(id));
                     }
                 }
+                if (ex.getResponseCode() == -1) sendError(ex, 404, "Not found"); // no route matched
             } catch (Exception e) {
-                sendJson(ex, 400, "{\"error\":\"" + esc(e.getMessage()) + "\"}");
+                sendFailure(ex, e);
             }
         }
     }
 
+    // GET /api/accounts — plain array, a cursor page, or a streamed list
+    private void listAccounts(HttpExchange ex, Map<String, String> q) throws IOException {
+        String from = q.get("from");
+        String to   = q.get("to");
+
+        if ("true".equals(q.get("stream"))) {
+            streamAccounts(ex, from, to, intParam(q, "limit", Integer.MAX_VALUE));
+            return;
+        }
+        if (!q.containsKey("limit") && !q.containsKey("after")) {
+            List<Account> all = from == null && to == null
+                ? bank.getAllAccounts()
+                : bank.getAccountsInRange(from, to, Integer.MAX_VALUE);
+            JsonWriter w = ResponseBody.json(ex, 200);
+            writeAccounts(w, all);
+            w.close();
+            return;
+        }
+
+        // Cursor page: {"accounts":[...], "next":"ACC1050"} — pass next back as ?after=
+        int limit = Math.min(intParam(q, "limit", DEFAULT_PAGE), MAX_PAGE);
+        String after = q.get("after");
+        List<Account> page = after != null
+            ? pageAfter(after, to, limit)
+            : bank.getAccountsInRange(from, to, limit);
+
+        String next = page.size() == limit ? page.get(page.size() - 1).accountNumber : null;
+        JsonWriter w = ResponseBody.json(ex, 200);
+        w.beginObject().name("accounts");
+        writeAccounts(w, page);
+        w.name("next").value(next).endObject();
+        w.close();
+    }
+
+    private List<Account> pageAfter(String after, String to, int limit) {
+        List<Account> page = bank.getAccountsAfter(after, limit);
+        if (to == null) return page;
+        int n = 0;
+        while (n < page.size() && AccountBST.compareKeys(page.get(n).accountNumber, to) <= 0) n++;
+        return page.subList(0, n);
+    }
+
+    // The list is read in pages of STREAM_PAGE accounts, so at most one page
+    // is ever held in memory; the writer sends it on (chunked, gzip'ed if
+    // the client takes it) each time its buffer fills.
+    private void streamAccounts(HttpExchange ex, String from, String to, int limit) throws IOException {
+        JsonWriter w = ResponseBody.json(ex, 200);
+        w.beginArray();
+        int sent = 0;
+        List<Account> page = bank.getAccountsInRange(from, to, Math.min(STREAM_PAGE, limit));
+        while (!page.isEmpty()) {
+            for (Account a : page) writeAccount(w, a);
+            sent += page.size();
+            if (page.size() < STREAM_PAGE || sent >= limit) break;
+            page = pageAfter(page.get(page.size() - 1).accountNumber, to, Math.min(STREAM_PAGE, limit - sent));
+        }
+        w.endArray();
+        w.close();
+    }
+
+    // GET /api/accounts/{id}/history — plain array, or a page with its size and cursor
+    private void listHistory(HttpExchange ex, int id, Map<String, String> q) throws IOException {
+        if (q.isEmpty()) {
+            List<Transaction> all = bank.getHistory(id);
+            JsonWriter w = ResponseBody.json(ex, 200);
+            writeTransactions(w, all);
+            w.close();
+            return;
+        }
+        if (bank.getAccount(id) == null) { sendError(ex, 404, "Account not found"); return; }
+
+        int  limit = Math.min(intParam(q, "limit", DEFAULT_PAGE), MAX_PAGE);
+        long from  = Long.parseLong(q.getOrDefault("from", "0"));
+        long to    = Long.parseLong(q.getOrDefault("to", String.valueOf(Long.MAX_VALUE)));
+        List<Transaction> page = bank.getHistory(id, from, to, q.get("beforeTxId"), limit);
+
+        // {"size":1234,"transactions":[...],"next":"TX900"} — pass next back as ?beforeTxId=
+        String next = page.size() == limit ? page.get(page.size() - 1).id : null;
+        JsonWriter w = ResponseBody.json(ex, 200);
+        w.beginObject().name("size").value(bank.getHistorySize(id)).name("transactions");
+        writeTransactions(w, page);
+        w.name("next").value(next).endObject();
+        w.close();
+    }
+
+    // ── /api/events ──────────────────────────────────────────────────────────
+    // The handler returns at once; EventHub keeps the stream open and writes to it
+    class EventsHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            if (!"GET".equals(ex.getRequestMethod())) {
+                sendError(ex, 405, "Use GET");
+                return;
+            }
+            try {
+                int[] accounts = accountList(queryParams(ex).get("account"));
+                if (!events.subscribe(ex, accounts, ex.getRequestHeaders().getFirst("Last-Event-ID"))) {
+                    sendError(ex, 503, "Too many event streams open. Try again later.");
+                }
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    // "ACC1001,ACC1002" → {1001, 1002}; null or "" → {} (every account)
+    private static int[] accountList(String csv) {
+        if (csv == null || csv.isEmpty()) return new int[0];
+        String[] ids = csv.split(",");
+        int[] nos = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            nos[i] = Bank.accountNo(ids[i].trim());
+            if (nos[i] == 0) throw new RuntimeException("Invalid account number: " + ids[i].trim());
+        }
+        return Arrays.stream(nos).distinct().toArray();
+    }
+
     // ── /api/undo ────────────────────────────────────────────────────────────
     class UndoHandler implements HttpHandler {
         public void handle(HttpExchange ex) throws IOException {
-            String msg = bank.undo();
-            sendJson(ex, 200, "{\"message\":\"" + esc(msg) + "\"}");
+            try {
+                sendMessage(ex, bank.undo());
+            } catch (RuntimeException e) {
+                sendFailure(ex, e);
+            }
         }
     }
 
     // ── /api/search?name=... ─────────────────────────────────────────────────
     class SearchHandler implements HttpHandler {
         public void handle(HttpExchange ex) throws IOException {
-            String query = ex.getRequestURI().getQuery(); // "name=Alice"
-            String name  = "";
-            if (query != null && query.startsWith("name=")) {
-                name = java.net.URLDecoder.decode(query.substring(5), "UTF-8");
+            try {
+                Map<String, String> q = queryParams(ex); // "name=Alice&limit=20"
+                int limit = Math.min(intParam(q, "limit", DEFAULT_PAGE), MAX_PAGE);
+                List<Account> found = bank.searchByName(q.getOrDefault("name", ""), limit);
+                JsonWriter w = ResponseBody.json(ex, 200);
+                writeAccounts(w, found);
+                w.close();
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    // ── /api/transfers ───────────────────────────────────────────────────────
+    class TransferHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                sendError(ex, 405, "Use POST");
+                return;
+            }
+            try {
+                Requests.Transfer req = Requests.Transfer.read(readBody(ex));
+                checkOwns(req.from);
+                checkOwns(req.to);
+                List<Transaction> txs = bank.transfer(req.from, req.to, req.amount, req.note);
+                JsonWriter w = ResponseBody.json(ex, 200);
+                w.beginObject().name("from");
+                writeAccount(w, bank.getAccount(req.from));
+                w.name("to");
+                writeAccount(w, bank.getAccount(req.to));
+                w.name("transactions");
+                writeTransactions(w, txs);
+                w.endObject();
+                w.close();
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+    }
+
+    // ── /api/batch ───────────────────────────────────────────────────────────
+    // One request, one lock round and one fsync for the whole list
+    class BatchHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                sendError(ex, 405, "Use POST");
+                return;
+            }
+            try {
+                List<BatchOp> ops = Requests.readBatch(readBody(ex));
+                for (BatchOp op : ops) {
+                    checkOwns(op.account);
+                    checkOwns(op.to);
+                }
+                List<Transaction> done = bank.applyBatch(ops);
+                JsonWriter w = ResponseBody.json(ex, 200);
+                w.beginObject().name("applied").value(done.size()).name("results");
+                writeTransactions(w, done);
+                w.endObject();
+                w.close();
+            } catch (Exception e) {
+                sendFailure(ex, e);
             }
-            sendJson(ex, 200, accountListJson(bank.searchByName(name)));
         }
     }
 
     // ── /api/stats ───────────────────────────────────────────────────────────
     class StatsHandler implements HttpHandler {
         public void handle(HttpExchange ex) throws IOException {
-            Map<String, Object> stats = bank.getStats();
-            sendJson(ex, 200,
-                "{\"totalAccounts\":" + stats.get("totalAccounts") +
-                ",\"totalBalance\":"  + stats.get("totalBalance")  +
-                ",\"undoStackSize\":" + stats.get("undoStackSize") + "}");
+            BankStats stats = bank.getStats();
+            JsonWriter w = ResponseBody.json(ex, 200);
+            w.beginObject()
+             .name("totalAccounts").value(stats.accounts())
+             .name("totalBalance").money(stats.totalBalance())
+             .name("undoStackSize").value(bank.getUndoStackSize())
+             .name("totalTransactions").value(stats.transactions());
+
+            w.name("byType").beginObject();
+            for (Map.Entry<String, BankStats.TypeTotals> e : stats.byType().entrySet()) {
+                w.name(e.getKey()).beginObject()
+                 .name("accounts").value(e.getValue().accounts.sum())
+                 .name("balance").money(e.getValue().balance.sum())
+                 .endObject();
+            }
+            w.endObject();
+
+            writeWindow(w.name("lastMinute"), stats.lastMinute);
+            writeWindow(w.name("lastHour"),   stats.lastHour);
+            w.endObject();
+            w.close();
+        }
+
+        private void writeWindow(JsonWriter w, BankStats.RollingWindow window) throws IOException {
+            long[] t = window.totals();
+            w.beginObject()
+             .name("deposits").value(t[0])
+             .name("depositAmount").money(t[1])
+             .name("withdrawals").value(t[2])
+             .name("withdrawalAmount").money(t[3])
+             .endObject();
         }
     }
 
-    // ── Helpers ──────────────────────────────────────────────────────────────
+    // ── /api/metrics ─────────────────────────────────────────────────────────
+    // JSON by default; ?format=prometheus (or a scraper's Accept: text/plain)
+    // for the Prometheus text format
+    class MetricsHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            String accept = ex.getRequestHeaders().getFirst("Accept");
+            if ("prometheus".equals(queryParams(ex).get("format")) || (accept != null && accept.startsWith("text/plain"))) {
+                byte[] text = metrics.prometheus().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                new ResponseBody(ex, 200, "text/plain; version=0.0.4; charset=utf-8").write(text, text.length, true);
+                return;
+            }
+            JsonWriter w = ResponseBody.json(ex, 200);
+            metrics.writeJson(w);
+            w.close();
+        }
+    }
 
-    private void sendJson(HttpExchange ex, int code, String json) throws IOException {
-        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().set("Content-Type", "application/json");
-        ex.sendResponseHeaders(code, bytes.length);
-        ex.getResponseBody().write(bytes);
-        ex.getResponseBody().close();
-    }
-
-    private void respond(HttpExchange ex, int code, String ct, String body) throws IOException {
-        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().set("Content-Type", ct);
-        ex.sendResponseHeaders(code, bytes.length);
-        ex.getResponseBody().write(bytes);
-        ex.getResponseBody().close();
-    }
-
-    // Read JSON body and parse it into a simple key->value map
-    private Map<String, String> readBody(HttpExchange ex) throws IOException {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        byte[] chunk = new byte[1024];
-        int n;
-        InputStream is = ex.getRequestBody();
-        while ((n = is.read(chunk)) != -1) buf.write(chunk, 0, n);
-        String raw = buf.toString("UTF-8").trim();
-        Map<String, String> map = new LinkedHashMap<>();
-        raw = raw.replaceAll("^\\{|\\}$", ""); // strip { and }
-        // Split on commas that are not inside quotes
-        for (String pair : raw.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)")) {
-            String[] kv = pair.split(":", 2);
-            if (kv.length == 2) {
-                map.put(kv[0].trim().replaceAll("\"", ""),
-                        kv[1].trim().replaceAll("\"", ""));
+    // ── /api/eod ─────────────────────────────────────────────────────────────
+    class EndOfDayHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            try {
+                EndOfDay.Run run;
+                int code = 200;
+                if ("POST".equals(ex.getRequestMethod())) {
+                    String date = queryParams(ex).get("date");
+                    run  = endOfDay.start(date == null ? java.time.LocalDate.now() : java.time.LocalDate.parse(date));
+                    code = 202;
+                } else {
+                    run = endOfDay.last();
+                    if (run == null) { sendError(ex, 404, "End of day has not run yet. Start it with POST /api/eod"); return; }
+                }
+                JsonWriter w = ResponseBody.json(ex, code);
+                run.writeJson(w);
+                w.close();
+            } catch (java.time.format.DateTimeParseException e) {
+                sendError(ex, 400, "date should look like 2026-10-17");
+            } catch (Exception e) {
+                sendFailure(ex, e);
             }
         }
-        return map;
     }
 
-    private String accountJson(Account a) {
-        return "{\"accountNumber\":\"" + a.accountNumber + "\"" +
-               ",\"ownerName\":\""     + esc(a.ownerName) + "\"" +
-               ",\"email\":\""         + esc(a.email)     + "\"" +
-               ",\"balance\":"         + a.balance        +
-               ",\"type\":\""          + a.type           + "\"}";
+    // ── /api/shard — partition moves, driven by the Router ───────────────────
+    class ShardHandler implements HttpHandler {
+        public void handle(HttpExchange ex) throws IOException {
+            String[] parts  = ex.getRequestURI().getPath().split("/"); // ["", "api", "shard", "partitions", p, action]
+            String   method = ex.getRequestMethod();
+            Partitions owned = bank.partitions();
+
+            try {
+                if (parts.length == 3 && "GET".equals(method)) {
+                    JsonWriter w = ResponseBody.json(ex, 200);
+                    w.beginObject()
+                     .name("accountCounter").value(bank.accountCounterValue())
+                     .name("accounts").value(bank.getStats().accounts())
+                     .name("partitions").beginArray();
+                    for (int p = 0; p < Partitions.COUNT; p++) {
+                        if (!owned.owns(p)) continue;
+                        w.beginObject().name("partition").value(p).name("epoch").value(owned.epoch(p))
+                         .name("frozen").value(owned.isFrozen(p)).endObject();
+                    }
+                    w.endArray().endObject();
+                    w.close();
+
+                } else if (parts.length == 6 && "partitions".equals(parts[3])) {
+                    int part = Integer.parseInt(parts[4]);
+                    if (part < 0 || part >= Partitions.COUNT) throw new RuntimeException("No partition " + part + ".");
+                    String action = parts[5];
+
+                    if ("export".equals(action) && "GET".equals(method)) {
+                        ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                        ex.getResponseHeaders().set("X-Partition-Epoch", String.valueOf(owned.epoch(part)));
+                        ex.sendResponseHeaders(200, 0);
+                        try (OutputStream out = ex.getResponseBody()) {
+                            bank.exportPartition(part, out);
+                        }
+                    } else if ("POST".equals(method)) {
+                        switch (action) {
+                            case "claim":
+                                if (owned.owns(part)) throw new RuntimeException("Partition " + part + " is already on this shard.");
+                                owned.claim(part, epochParam(ex));
+                                sendMessage(ex, "Claimed partition " + part + ".");
+                                break;
+                            case "freeze":
+                                owned.freeze(part);
+                                sendMessage(ex, "Partition " + part + " is frozen.");
+                                break;
+                            case "thaw":
+                                owned.thaw(part);
+                                sendMessage(ex, "Partition " + part + " takes writes again.");
+                                break;
+                            case "import":
+                                long epoch = epochParam(ex);
+                                int n = bank.importPartition(part, epoch, ex.getRequestBody());
+                                JsonWriter w = ResponseBody.json(ex, 200);
+                                w.beginObject().name("partition").value(part).name("epoch").value(epoch)
+                                 .name("accounts").value(n).endObject();
+                                w.close();
+                                break;
+                            case "drop":
+                                sendMessage(ex, "Dropped partition " + part + " (" + bank.dropPartition(part) + " accounts).");
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                }
+                if (ex.getResponseCode() == -1) sendError(ex, 404, "Not found");
+            } catch (Exception e) {
+                sendFailure(ex, e);
+            }
+        }
+
+        private long epochParam(HttpExchange ex) throws IOException {
+            String v = queryParams(ex).get("epoch");
+            if (v == null) throw new RuntimeException("epoch is required.");
+            long epoch = Long.parseLong(v);
+            if (epoch <= 0) throw new RuntimeException("epoch must be positive.");
+            return epoch;
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────────
+
+    // On a shard, 421 for an account in a partition it doesn't own
+    private void checkOwns(int accNo) {
+        Partitions owned = bank.partitions();
+        if (owned != null) owned.checkOwns(accNo);
     }
 
-    private String accountListJson(java.util.List<Account> list) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < list.size(); i++) {
-            if (i > 0) sb.append(",");
-            sb.append(accountJson(list.get(i)));
+    // Nothing is sent until the writer's buffer fills or close() is called,
+    // so if building an ordinary response throws, the error can still go out.
+
+    private void sendAccount(HttpExchange ex, int code, Account a) throws IOException {
+        JsonWriter w = ResponseBody.json(ex, code);
+        writeAccount(w, a);
+        w.close();
+    }
+
+    static void sendMessage(HttpExchange ex, String msg) throws IOException {
+        JsonWriter w = ResponseBody.json(ex, 200);
+        w.beginObject().name("message").value(msg).endObject();
+        w.close();
+    }
+
+    // Bank and the request readers reject bad input with a plain
+    // RuntimeException (or a NumberFormatException from parsing): that is a
+    // 400 with their message. Anything else — a journal write failing, a
+    // bug — is a 500, and the details go to the log rather than the client.
+    private void sendFailure(HttpExchange ex, Exception e) throws IOException {
+        if (ex.getResponseCode() != -1) { // too late for an error response: drop the connection
+            ex.close();
+            return;
+        }
+        if (e.getClass() == RuntimeException.class || e instanceof IllegalArgumentException) {
+            sendError(ex, 400, e.getMessage());
+            return;
+        }
+        if (e instanceof Partitions.Unavailable) { // a shard: the router retries elsewhere or later
+            Partitions.Unavailable u = (Partitions.Unavailable) e;
+            ex.getResponseHeaders().set("X-Partition", String.valueOf(u.partition));
+            if (u.status == 503) ex.getResponseHeaders().set("Retry-After", "1");
+            sendError(ex, u.status, e.getMessage());
+            return;
+        }
+        System.err.println("Request " + ex.getRequestMethod() + " " + ex.getRequestURI() + " failed:");
+        e.printStackTrace();
+        sendError(ex, 500, "Internal server error");
+    }
+
+    static void sendError(HttpExchange ex, int code, String msg) throws IOException {
+        JsonWriter w = ResponseBody.json(ex, code);
+        w.beginObject().name("error").value(msg == null ? "" : msg).endObject();
+        w.close();
+    }
+
+    // Parse "?a=1&b=two" into a map (later keys win)
+    static Map<String, String> queryParams(HttpExchange ex) throws UnsupportedEncodingException {
+        Map<String, String> map = new HashMap<>();
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null) return map;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            map.put(java.net.URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                    java.net.URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
         }
-        return sb.append("]").toString();
+        return map;
     }
 
-    private String txListJson(java.util.List<Transaction> list) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < list.size(); i++) {
-            if (i > 0) sb.append(",");
-            Transaction t = list.get(i);
-            sb.append("{\"id\":\"")          .append(t.id)           .append("\"")
-              .append(",\"type\":\"")         .append(t.type)         .append("\"")
-              .append(",\"amount\":")         .append(t.amount)
-              .append(",\"balanceAfter\":")   .append(t.balanceAfter)
-              .append(",\"note\":\"")         .append(esc(t.note))    .append("\"}");
+    static int intParam(Map<String, String> q, String key, int def) {
+        String v = q.get(key);
+        if (v == null) return def;
+        int n = Integer.parseInt(v);
+        if (n <= 0) throw new RuntimeException(key + " must be positive.");
+        return n;
+    }
+
+    // The request body as a JSON stream — see JsonReader and Requests
+    private JsonReader readBody(HttpExchange ex) {
+        String len = ex.getRequestHeaders().getFirst("Content-Length");
+        long hint = -1;
+        try {
+            if (len != null) hint = Long.parseLong(len.trim());
+        } catch (NumberFormatException ignored) {
+            // no usable hint; the reader falls back to its default buffer
         }
-        return sb.append("]").toString();
+        if (hint > JsonReader.MAX_BODY) throw new RuntimeException("Request body too large.");
+        return new JsonReader(ex.getRequestBody(), hint);
     }
 
-    // Escape special characters for JSON strings
-    private String esc(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    static void writeAccount(JsonWriter w, Account a) throws IOException {
+        w.beginObject()
+         .name("accountNumber").value(a.accountNumber)
+         .name("ownerName").value(a.ownerName)
+         .name("email").value(a.email)
+         .name("balance").money(a.balance)
+         .name("type").value(a.type)
+         .endObject();
+    }
+
+    static void writeAccounts(JsonWriter w, List<Account> list) throws IOException {
+        w.beginArray();
+        for (Account a : list) writeAccount(w, a);
+        w.endArray();
+    }
+
+    static void writeTransactions(JsonWriter w, List<Transaction> list) throws IOException {
+        w.beginArray();
+        for (Transaction t : list) {
+            w.beginObject()
+             .name("id").value(t.id)
+             .name("accountNumber").value(t.accountNumber)
+             .name("type").value(t.type)
+             .name("amount").money(t.amount)
+             .name("balanceAfter").money(t.balanceAfter)
+             .name("timestamp").value(t.timestamp)
+             .name("note").value(t.note == null ? "" : t.note);
+            if (t.reverses != null)     w.name("reverses").value(t.reverses);
+            if (t.counterparty != null) w.name("counterparty").value(t.counterparty);
+            w.endObject();
+        }
+        w.endArray();
     }
 }
@@ -0,0 +1,263 @@
+package bank;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/*
+ * Snapshot — the whole bank in one file, so startup doesn't have to
+ * replay the journal from the very beginning.
+ *
+ * How it works:
+ *   1. The journal starts a new segment (say journal-000007.wal).
+ *      Every change from now on lands in segment 7 or later.
+ *   2. We walk the accounts in order. For each one we take its lock just
+ *      long enough to copy its balance and history length, then write
+ *      them out with the lock released — requests keep running.
+ *   3. The file is written as snapshot.tmp, fsync'ed and renamed to
+ *      snapshot.bin, so a crash never leaves half a snapshot behind.
+ *   4. Segments 1..6 are now redundant and get deleted.
+ *
+ *   On startup we load snapshot.bin and replay segments 7+ only. A change
+ *   made while step 2 was running may be in BOTH the snapshot and segment
+ *   7; replay skips any transaction an account already has (see Bank).
+ *
+ * Loading uses a memory-mapped file: the OS pages the file straight into
+ * memory and we decode from it without copying it into our own buffers.
+ *
+ * File layout:
+ *   header:   magic, version, first journal segment to replay,
+ *             account counter, transaction counter
+ *   accounts: 1, number, name, email, type, balance, tx count, txs...
+ *   end:      0
+ *
+ * A partition moving between shards travels in the same format, with only
+ * its accounts and 0 for the journal segment (see export / loadFile).
+ */
+public class Snapshot {
+
+    static final String FILE = "snapshot.bin";
+    private static final String TMP = "snapshot.tmp";
+
+    private static final int   MAGIC   = 0x4E584253; // "NXBS"
+    private static final short VERSION = 3; // 2: amounts in paise, 3: transfers
+
+    private static final byte ACCOUNT = 1;
+    private static final byte END     = 0;
+
+    // Map the file in windows of this size (a single mapping is capped at 2 GB)
+    private static final long WINDOW = 256L << 20;
+
+    // One account as copied under its lock
+    static final class AccountState {
+        Account         account;
+        long            balance; // paise
+        TransactionList history;
+        int             txCount; // only the first txCount entries belong to the snapshot
+    }
+
+    // ── Writing ──────────────────────────────────────────────────────────────
+    static void write(Path dir, long journalGen, Bank bank) throws IOException {
+        Path tmp = dir.resolve(TMP);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeTo(ch, journalGen, bank, n -> true);
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Only the accounts whose numbers match, to a stream (a partition on its way to another shard)
+    static void export(OutputStream out, Bank bank, IntPredicate which) throws IOException {
+        writeTo(Channels.newChannel(out), 0, bank, which);
+        out.flush();
+    }
+
+    private static void writeTo(WritableByteChannel ch, long journalGen, Bank bank, IntPredicate which) throws IOException {
+        Writer w = new Writer(ch);
+        w.need(32);
+        w.buf.putInt(MAGIC).putShort(VERSION)
+             .putLong(journalGen).putInt(bank.accountCounterValue()).putLong(bank.txCounterValue());
+
+        String cursor = null;
+        List<Account> page;
+        while (!(page = bank.getAccountsAfter(cursor, 512)).isEmpty()) {
+            cursor = page.get(page.size() - 1).accountNumber;
+            List<Account> wanted = new ArrayList<>(page.size());
+            for (Account a : page) if (which.test(a.number)) wanted.add(a);
+            for (Snapshot.AccountState st : bank.captureForSnapshot(wanted)) writeAccount(w, st);
+        }
+
+        w.need(1);
+        w.buf.put(END);
+        w.flush();
+    }
+
+    private static void writeAccount(Writer w, AccountState st) throws IOException {
+        Account a = st.account;
+        w.need(5);
+        w.buf.put(ACCOUNT).putInt(a.number);
+        w.putString(a.ownerName);
+        w.putString(a.email);
+        w.putString(a.type);
+        w.need(12);
+        w.buf.putLong(st.balance).putInt(st.txCount);
+
+        TransactionList h = st.history;
+        for (int i = 0; i < st.txCount; i++) {
+            byte type = h.type(i);
+            long ref  = h.ref(i);
+            w.need(54);
+            w.buf.putLong(h.txNo(i))
+                 .put(type)
+                 .putLong(h.amount(i))
+                 .putLong(h.balanceAfter(i))
+                 .putLong(h.timestamp(i))
+                 .put((byte) (h.isReversed(i) ? 1 : 0))
+                 .putLong(type == Transaction.REVERSAL ? ref : 0)
+                 .putInt(Transaction.isTransfer(type) ? (int) ref : 0);
+            w.putString(h.note(i));
+        }
+    }
+
+    // Buffered writes to a file or a stream
+    private static final class Writer {
+        final WritableByteChannel ch;
+        final ByteBuffer          buf = ByteBuffer.allocateDirect(1 << 20);
+
+        Writer(WritableByteChannel ch) { this.ch = ch; }
+
+        void need(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        // The length is two bytes (see Bank.MAX_TEXT); a longer text would
+        // wrap it and leave the file unreadable, so fail the snapshot instead
+        void putString(String s) throws IOException {
+            byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+            if (b.length > Bank.MAX_TEXT) throw new IOException("Text of " + b.length + " bytes is too long for a snapshot.");
+            need(2 + b.length);
+            buf.putShort((short) b.length).put(b);
+        }
+    }
+
+    // ── Loading ──────────────────────────────────────────────────────────────
+    // Loads dir/snapshot.bin into bank; returns the first journal segment to
+    // replay after it, or 0 when there is no snapshot.
+    static long load(Path dir, Bank bank) throws IOException {
+        Path file = dir.resolve(FILE);
+        if (!Files.exists(file)) return 0;
+        return loadFile(file, bank, n -> true);
+    }
+
+    // Adds every account in file to bank (each must be accepted); returns
+    // its journal segment field
+    static long loadFile(Path file, Bank bank, IntPredicate accept) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader r = new Reader(ch);
+            r.ensure(26);
+            if (r.buf.getInt() != MAGIC || r.buf.getShort() != VERSION) throw new IOException("Not a snapshot: " + file);
+            long journalGen = r.buf.getLong();
+            int  accCounter = r.buf.getInt();
+            long txCounter  = r.buf.getLong();
+
+            while (true) {
+                r.ensure(1);
+                byte kind = r.buf.get();
+                if (kind == END) break;
+                if (kind != ACCOUNT) throw new IOException("Corrupt snapshot: " + file);
+
+                r.ensure(4);
+                int    accNo   = r.buf.getInt();
+                if (!accept.test(accNo)) throw new IOException("ACC" + accNo + " does not belong in " + file.getFileName());
+                String name    = r.getString();
+                String email   = r.getString();
+                String type    = r.getString();
+                r.ensure(12);
+                long   balance = r.buf.getLong();
+                int    count   = r.buf.getInt();
+
+                Account acc = new Account(accNo, name, email, balance, type);
+                TransactionList txs = bank.newHistory(acc);
+                for (int i = 0; i < count; i++) {
+                    r.ensure(46);
+                    long    txNo     = r.buf.getLong();
+                    byte    txType   = typeCode(r.buf.get());
+                    long    amount   = r.buf.getLong();
+                    long    after    = r.buf.getLong();
+                    long    ts       = r.buf.getLong();
+                    boolean rev      = r.buf.get() != 0;
+                    long    reverses = r.buf.getLong();
+                    int     other    = r.buf.getInt();
+                    int at = txs.add(txNo, txType, amount, after, ts, reverses != 0 ? reverses : other, r.getString());
+                    if (rev) txs.markReversed(at);
+                }
+                bank.restoreAccount(acc, txs);
+            }
+            bank.restoreCounters(accCounter, txCounter);
+            return journalGen;
+        }
+    }
+
+    // Reads a file through a sliding memory-mapped window
+    private static final class Reader {
+        final FileChannel ch;
+        final long size;
+        long base;              // file offset of buf's position 0
+        MappedByteBuffer buf;
+
+        Reader(FileChannel ch) throws IOException {
+            this.ch   = ch;
+            this.size = ch.size();
+            map(0);
+        }
+
+        private void map(long at) throws IOException {
+            base = at;
+            buf  = ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW, size - at));
+        }
+
+        // Make sure the next n bytes are inside the window
+        void ensure(int n) throws IOException {
+            if (buf.remaining() >= n) return;
+            long at = base + buf.position();
+            if (size - at < n) throw new IOException("Snapshot is truncated.");
+            map(at);
+        }
+
+        String getString() throws IOException {
+            ensure(2);
+            int len = buf.getShort() & 0xFFFF;
+            ensure(len);
+            byte[] b = new byte[len];
+            buf.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Snapshots use Transaction's type codes as they are
+    private static byte typeCode(byte code) throws IOException {
+        if (code < Transaction.DEPOSIT || code > Transaction.TRANSFER_IN) {
+            throw new IOException("Unknown transaction type " + code);
+        }
+        return code;
+    }
+}
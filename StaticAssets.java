@@ -0,0 +1,283 @@
+package bank;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * StaticAssets — the frontend files, held in memory and served with
+ * caching headers.
+ *
+ * How it works:
+ *   At startup every file under the frontend directory is read once and
+ *   kept as bytes, together with a gzip'ed copy (compressed at the highest
+ *   level, since that only happens once) and a strong ETag — a hash of the
+ *   bytes:
+ *
+ *     "/index.html" → raw 24 KB, gzip 6 KB, ETag "9f2c41d07ab3e815"
+ *     "/style.css"  → raw  1 KB, gzip 0.4 KB, ...
+ *     "/"           → same as "/index.html"
+ *
+ *   A request is answered from the map with no disk access at all:
+ *
+ *     If-None-Match matches the ETag   → 304, no body
+ *     Accept-Encoding has br and a
+ *       precompressed x.br was found   → the .br bytes
+ *     Accept-Encoding has gzip         → the gzip bytes
+ *     otherwise                        → the raw bytes
+ *
+ *   The JDK has no Brotli encoder, so a Brotli variant is only served
+ *   when a build step has left one next to the file (style.css.br).
+ *
+ *   A WatchService thread notices when a file is edited and swaps in a
+ *   freshly loaded map, so a changed index.html shows up on the next
+ *   reload without restarting the server.
+ *
+ * Caching:
+ *   HTML is "no-cache": the browser keeps it but checks the ETag every
+ *   time, so a new frontend is picked up at once. Other files may be used
+ *   for MAX_AGE seconds before that check.
+ */
+public class StaticAssets implements HttpHandler {
+
+    static final int MAX_AGE = 300;
+
+    // Smaller files are sent as they are
+    private static final int GZIP_MIN = 256;
+
+    // One file, every way we can send it
+    static final class Asset {
+        final String contentType;
+        final byte[] raw;
+        final byte[] gzip;   // null if it didn't get smaller
+        final byte[] brotli; // null unless a .br file was provided
+        final String etag;   // strong, quoted; each encoding gets its own suffix
+
+        Asset(String contentType, byte[] raw, byte[] gzip, byte[] brotli, String etag) {
+            this.contentType = contentType;
+            this.raw         = raw;
+            this.gzip        = gzip;
+            this.brotli      = brotli;
+            this.etag        = etag;
+        }
+    }
+
+    private final Path dir;
+    private volatile Map<String, Asset> assets = Collections.emptyMap();
+
+    public StaticAssets(Path dir) {
+        this.dir = dir;
+    }
+
+    // ── Loading ──────────────────────────────────────────────────────────────
+
+    // Reads every file under dir into a new map, then swaps it in
+    public void load() throws IOException {
+        Map<String, Asset> map = new HashMap<>();
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    String name = p.getFileName().toString();
+                    if (!Files.isRegularFile(p) || name.endsWith(".br") || name.endsWith(".gz")) continue;
+                    String url = "/" + dir.relativize(p).toString().replace('\\', '/');
+                    map.put(url, read(p, name));
+                }
+            }
+        }
+        Asset index = map.get("/index.html");
+        if (index != null) map.put("/", index);
+        assets = map;
+    }
+
+    private static Asset read(Path p, String name) throws IOException {
+        byte[] raw  = Files.readAllBytes(p);
+        String type = contentType(name);
+        byte[] gzip = compressible(type) && raw.length >= GZIP_MIN ? gzip(raw) : null;
+        if (gzip != null && gzip.length >= raw.length) gzip = null;
+
+        Path br = p.resolveSibling(name + ".br");
+        byte[] brotli = Files.isRegularFile(br) ? Files.readAllBytes(br) : null;
+
+        return new Asset(type, raw, gzip, brotli, "\"" + hash(raw) + "\"");
+    }
+
+    // Reload whenever something in dir changes (runs on a daemon thread)
+    public void watch() throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        WatchService ws = FileSystems.getDefault().newWatchService();
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs::iterator) {
+                if (Files.isDirectory(d)) {
+                    d.register(ws, StandardWatchEventKinds.ENTRY_CREATE,
+                                   StandardWatchEventKinds.ENTRY_MODIFY,
+                                   StandardWatchEventKinds.ENTRY_DELETE);
+                }
+            }
+        }
+        Thread t = new Thread(() -> watchLoop(ws), "asset-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void watchLoop(WatchService ws) {
+        try {
+            while (true) {
+                WatchKey key = ws.take();
+                Thread.sleep(100);        // an editor's save is often several events; take them together
+                key.pollEvents();
+                key.reset();
+                for (WatchKey k; (k = ws.poll()) != null; ) {
+                    k.pollEvents();
+                    k.reset();
+                }
+                try {
+                    load();
+                    System.out.println("Frontend reloaded from " + dir.toAbsolutePath());
+                } catch (IOException e) {
+                    System.err.println("Frontend reload failed: " + e.getMessage()); // keep serving the old files
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    // ── Serving ──────────────────────────────────────────────────────────────
+
+    public void handle(HttpExchange ex) throws IOException {
+        String method = ex.getRequestMethod();
+        boolean head  = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            sendText(ex, 405, "Use GET");
+            return;
+        }
+        String path = ex.getRequestURI().getPath();
+        Asset a = assets.get(path);
+        if (a == null) {
+            sendText(ex, 404, "/".equals(path)
+                ? "Run from project root. Missing: " + dir.resolve("index.html")
+                : "Not found");
+            return;
+        }
+
+        byte[] body = a.raw;
+        String etag = a.etag, encoding = null;
+        if (a.brotli != null && ResponseBody.accepts(ex, "br")) {
+            body = a.brotli;
+            encoding = "br";
+        } else if (a.gzip != null && ResponseBody.acceptsGzip(ex)) {
+            body = a.gzip;
+            encoding = "gzip";
+        }
+        if (encoding != null) etag = etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+
+        com.sun.net.httpserver.Headers h = ex.getResponseHeaders();
+        h.set("ETag", etag);
+        h.set("Cache-Control", a.contentType.startsWith("text/html") ? "no-cache" : "public, max-age=" + MAX_AGE);
+        h.set("Vary", "Accept-Encoding");
+
+        if (matches(ex.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+
+        h.set("Content-Type", a.contentType);
+        if (encoding != null) h.set("Content-Encoding", encoding);
+        if (head) {
+            h.set("Content-Length", String.valueOf(body.length));
+            ex.sendResponseHeaders(200, -1);
+            ex.close();
+            return;
+        }
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // If-None-Match: "a", W/"b", * — compared ignoring W/, as RFC 9110 says for this header
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals("*") || t.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static void sendText(HttpExchange ex, int code, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // ── Internals ────────────────────────────────────────────────────────────
+
+    private static String contentType(String name) {
+        String ext = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        switch (ext) {
+            case "html": case "htm": return "text/html; charset=UTF-8";
+            case "css":              return "text/css; charset=UTF-8";
+            case "js":  case "mjs":  return "text/javascript; charset=UTF-8";
+            case "json":             return "application/json";
+            case "svg":              return "image/svg+xml";
+            case "txt":              return "text/plain; charset=UTF-8";
+            case "png":              return "image/png";
+            case "jpg": case "jpeg": return "image/jpeg";
+            case "gif":              return "image/gif";
+            case "ico":              return "image/x-icon";
+            case "woff2":            return "font/woff2";
+            default:                 return "application/octet-stream";
+        }
+    }
+
+    // Images and fonts are compressed already
+    private static boolean compressible(String type) {
+        return type.startsWith("text/") || type.equals("application/json") || type.equals("image/svg+xml");
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(raw.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(buf) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gz.write(raw);
+        }
+        return buf.toByteArray();
+    }
+
+    // First 8 bytes of the SHA-256, in hex
+    private static String hash(byte[] raw) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(raw);
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) sb.append(String.format("%02x", d[i]));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+}
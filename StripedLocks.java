@@ -0,0 +1,67 @@
+package bank;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Concurrency: Lock Striping
+ *
+ * How it works:
+ *   One lock for the whole bank would make every request wait in a single
+ *   line. One lock per account would cost an object per account.
+ *   Striping sits in between: we keep a fixed array of locks and pick one
+ *   by hashing the account number.
+ *
+ *      ACC1001 ──hash──►  stripe 5  ──►  locks[5]
+ *      ACC1002 ──hash──►  stripe 12 ──►  locks[12]
+ *
+ * Two requests on the same account always get the same lock, so balances
+ * stay correct. Requests on different accounts almost always get
+ * different locks, so they run in parallel.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    // stripes is rounded up to a power of two so we can use & instead of %
+    public StripedLocks(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) locks[i] = new ReentrantLock();
+        mask = n - 1;
+    }
+
+    // Which stripe guards this account number
+    public int stripeFor(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing, as in AccountTable
+        h ^= (h >>> 16);          // spread high bits so nearby account numbers land apart
+        return h & mask;
+    }
+
+    public ReentrantLock lockFor(int key) {
+        return locks[stripeFor(key)];
+    }
+
+    public int stripes() { return locks.length; }
+
+    /*
+     * Lock several stripes at once (which[i] == true means stripe i).
+     *
+     * Deadlock:
+     *   If one thread holds A and waits for B while another holds B and
+     *   waits for A, both wait forever. Taking locks in one global order —
+     *   lowest stripe first — makes that impossible: whoever gets the lower
+     *   stripe first also gets to the higher one first.
+     */
+    public void lockAll(boolean[] which) {
+        for (int i = 0; i < locks.length; i++) {
+            if (which[i]) locks[i].lock();
+        }
+    }
+
+    public void unlockAll(boolean[] which) {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            if (which[i]) locks[i].unlock();
+        }
+    }
+}
@@ -1,23 +1,57 @@
 package bank;
 
-// A single transaction — also acts as a LinkedList node
+// A single transaction, as the API sends it. Histories are not kept as
+// these objects — see TransactionList — one is built when a transaction is
+// read out (a view: changing it changes nothing in the bank).
 public class Transaction {
 
+    // Type codes, as stored in TransactionList and snapshots
+    static final byte DEPOSIT      = 1;
+    static final byte WITHDRAW     = 2;
+    static final byte REVERSAL     = 3;
+    static final byte TRANSFER_OUT = 4;
+    static final byte TRANSFER_IN  = 5;
+
     String id;
-    String type;      // DEPOSIT, WITHDRAW
-    double amount;
-    double balanceAfter;
+    String accountNumber; // the account this transaction belongs to
+    String type;      // DEPOSIT, WITHDRAW, TRANSFER_OUT, TRANSFER_IN, REVERSAL
+    long   amount;       // in paise (see Money)
+    long   balanceAfter;
     String note;
+    long   timestamp; // when it happened, epoch millis
+
+    // For a REVERSAL: the id of the transaction it cancelled
+    String reverses;
+
+    // For a TRANSFER_OUT / TRANSFER_IN: the account on the other side.
+    // The two halves of a transfer have consecutive numbers (OUT n, IN n+1).
+    String counterparty;
+
+    // Had it been undone when this view was made?
+    boolean reversed;
 
-    // LinkedList pointer to the next (older) transaction
-    Transaction next;
+    public Transaction(String id, String accountNumber, String type, long amount, long balanceAfter, String note, long timestamp) {
+        this.id            = id;
+        this.accountNumber = accountNumber;
+        this.type          = type;
+        this.amount        = amount;
+        this.balanceAfter  = balanceAfter;
+        this.note          = note;
+        this.timestamp     = timestamp;
+    }
+
+    static String typeName(byte code) {
+        switch (code) {
+            case DEPOSIT:      return "DEPOSIT";
+            case WITHDRAW:     return "WITHDRAW";
+            case REVERSAL:     return "REVERSAL";
+            case TRANSFER_OUT: return "TRANSFER_OUT";
+            case TRANSFER_IN:  return "TRANSFER_IN";
+            default: throw new IllegalArgumentException("Unknown transaction type " + code);
+        }
+    }
 
-    public Transaction(String id, String type, double amount, double balanceAfter, String note) {
-        this.id           = id;
-        this.type         = type;
-        this.amount       = amount;
-        this.balanceAfter = balanceAfter;
-        this.note         = note;
-        this.next         = null;
+    static boolean isTransfer(byte code) {
+        return code == TRANSFER_OUT || code == TRANSFER_IN;
     }
 }
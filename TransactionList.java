@@ -1,47 +1,234 @@
 package bank;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /*
- * DSA: Singly Linked List
+ * One account's history, stored column by column in chunks of
+ * primitive arrays instead of one object per transaction.
  *
- * How it works:
- *   head → tx5 → tx4 → tx3 → tx2 → tx1 → null
+ * Layout:
+ *   Entries are numbered oldest first. Entry i lives in chunk i / 1024,
+ *   slot i % 1024. A chunk is one long[] holding six columns back to back
+ *   plus one byte[] for the types:
  *
- * New transactions are added at the FRONT (head) so the
- * most recent transaction always comes first — O(1) insert.
+ *     longs: [ txNo × 1024 | amount × 1024 | balanceAfter × 1024 |
+ *              timestamp × 1024 | ref × 1024 | note × 1024 ]
+ *     types: [ type (| REVERSED) × 1024 ]
  *
- * To read all transactions we just follow .next pointers
- * from head until we hit null.
+ *     ref  — the other account for a transfer, the cancelled
+ *            transaction's number for a REVERSAL, else 0
+ *     note — where the text is in the bank's NoteArena
+ *
+ *   That is 49 bytes per transaction, with no id String, no note String,
+ *   no object header and no next pointer. The first chunk starts with room
+ *   for 4 entries and doubles up to 1024, so an account with a handful of
+ *   transactions stays small; after that, chunks are added, never copied.
+ *
+ * Reading:
+ *   Transaction numbers and timestamps only ever grow, so each column is
+ *   sorted. A page "before TX4" or "between 9:00 and 10:00" finds its
+ *   starting point with a binary search — O(log n) — and then reads only
+ *   the entries it returns. A Transaction object is built only for an
+ *   entry that is actually returned (see get), at the API boundary.
+ *
+ * Writers add under the owning account's lock (see Bank). longs, types and
+ * size are volatile, and size is written last, so readers on other threads
+ * always see fully written entries.
  */
 public class TransactionList {
 
-    private Transaction head; // points to the most recent transaction
-    private int size;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK      = 1 << CHUNK_BITS;
+    private static final int FIRST      = 4;
+
+    // Columns inside a chunk's long[]
+    private static final int TX_NO = 0, AMOUNT = 1, BALANCE = 2, TIME = 3, REF = 4, NOTE = 5, COLUMNS = 6;
+
+    private static final byte REVERSED = 0x40; // flag on the type byte
+
+    private final String    accountNumber;
+    private final NoteArena notes;
+
+    private volatile long[][] longs = { new long[COLUMNS * FIRST] };
+    private volatile byte[][] types = { new byte[FIRST] };
+    private volatile int size;
+
+    public TransactionList(String accountNumber, NoteArena notes) {
+        this.accountNumber = accountNumber;
+        this.notes         = notes;
+    }
+
+    // Append a transaction — O(1) (amortised while the first chunk grows).
+    // Returns its index.
+    public int add(long txNo, byte type, long amount, long balanceAfter, long ts, long ref, String note) {
+        int i = size;
+        // Keep timestamps in order even if the clock steps back
+        if (i > 0 && ts < timestamp(i - 1)) ts = timestamp(i - 1);
+
+        int c = i >>> CHUNK_BITS, s = i & (CHUNK - 1);
+        long[][] ls = longs;
+        byte[][] ts8 = types;
+        if (c == ls.length) {                      // start a new chunk
+            ls  = Arrays.copyOf(ls, c + 1);
+            ts8 = Arrays.copyOf(ts8, c + 1);
+            ls[c]  = new long[COLUMNS * CHUNK];
+            ts8[c] = new byte[CHUNK];
+        } else if (s == ts8[c].length) {           // first chunk is full: double it
+            ls  = ls.clone();
+            ts8 = ts8.clone();
+            ls[c]  = grow(ls[c], s, s * 2);
+            ts8[c] = Arrays.copyOf(ts8[c], s * 2);
+        }
+        long[] col = ls[c];
+        int cap = ts8[c].length;
+        col[TX_NO   * cap + s] = txNo;
+        col[AMOUNT  * cap + s] = amount;
+        col[BALANCE * cap + s] = balanceAfter;
+        col[TIME    * cap + s] = ts;
+        col[REF     * cap + s] = ref;
+        col[NOTE    * cap + s] = notes.add(note);
+        ts8[c][s] = type;
+
+        if (ls != longs) {
+            longs = ls;
+            types = ts8;
+        }
+        size = i + 1; // publish last, after the entry is in place
+        return i;
+    }
+
+    // Same columns, more room in each
+    private static long[] grow(long[] old, int cap, int newCap) {
+        long[] n = new long[COLUMNS * newCap];
+        for (int k = 0; k < COLUMNS; k++) System.arraycopy(old, k * cap, n, k * newCap, cap);
+        return n;
+    }
+
+    // ── Columns (i < a size() read earlier) ──────────────────────────────────
 
-    public TransactionList() {
-        head = null;
-        size = 0;
+    public long txNo(int i)         { return column(i, TX_NO); }
+    public long amount(int i)       { return column(i, AMOUNT); }
+    public long balanceAfter(int i) { return column(i, BALANCE); }
+    public long timestamp(int i)    { return column(i, TIME); }
+    public long ref(int i)          { return column(i, REF); }
+    public String note(int i)       { return notes.get(column(i, NOTE)); }
+
+    public byte type(int i) {
+        return (byte) (types[i >>> CHUNK_BITS][i & (CHUNK - 1)] & ~REVERSED);
+    }
+
+    public boolean isReversed(int i) {
+        return (types[i >>> CHUNK_BITS][i & (CHUNK - 1)] & REVERSED) != 0;
     }
 
-    // Add a new transaction at the front — O(1)
-    public void add(Transaction t) {
-        t.next = head; // new node points to old head
-        head   = t;    // head now points to new node
-        size++;
+    // Caller holds the account's lock
+    void markReversed(int i) {
+        types[i >>> CHUNK_BITS][i & (CHUNK - 1)] |= REVERSED;
     }
 
-    // Return all transactions as a plain list (for the API to send to frontend)
+    private long column(int i, int col) {
+        long[] chunk = longs[i >>> CHUNK_BITS];
+        int cap = chunk.length / COLUMNS; // the first chunk may not be full size yet
+        return chunk[col * cap + (i & (CHUNK - 1))];
+    }
+
+    // ── Views ────────────────────────────────────────────────────────────────
+
+    // The i-th transaction, oldest first, as a new Transaction
+    public Transaction get(int i) {
+        byte type = type(i);
+        Transaction t = new Transaction("TX" + txNo(i), accountNumber, Transaction.typeName(type),
+                                        amount(i), balanceAfter(i), note(i), timestamp(i));
+        t.reversed = isReversed(i);
+        long ref = ref(i);
+        if (type == Transaction.REVERSAL)     t.reverses     = "TX" + ref;
+        else if (Transaction.isTransfer(type)) t.counterparty = "ACC" + ref;
+        return t;
+    }
+
+    // All transactions, newest first
     public List<Transaction> getAll() {
-        List<Transaction> result = new ArrayList<>();
-        Transaction current = head;
-        while (current != null) {
-            result.add(current);
-            current = current.next; // follow the pointer
+        int n = size;
+        List<Transaction> result = new ArrayList<>(n);
+        for (int i = n - 1; i >= 0; i--) result.add(get(i));
+        return result;
+    }
+
+    /*
+     * One page of history, newest first.
+     *   from, to    — only transactions with from <= timestamp <= to
+     *   beforeTxId  — only transactions older than this one (the cursor), or null
+     *   limit       — at most this many
+     */
+    public List<Transaction> page(long from, long to, String beforeTxId, int limit) {
+        int n = size;               // read size first: everything below it is in place
+
+        // Start just below the first entry that is too new
+        int end = upperBoundByTime(n, to);
+        if (beforeTxId != null) end = Math.min(end, lowerBoundById(n, txNumber(beforeTxId)));
+
+        List<Transaction> result = new ArrayList<>(Math.min(limit, Math.max(end, 0)));
+        for (int i = end - 1; i >= 0 && result.size() < limit; i--) {
+            if (timestamp(i) < from) break; // everything further back is older still
+            result.add(get(i));
         }
         return result;
     }
 
+    // Number of the newest transaction, or 0 when empty
+    public long lastTxNumber() {
+        int n = size;
+        return n == 0 ? 0 : txNo(n - 1);
+    }
+
+    // Index of a transaction by number, or -1 — O(log n)
+    public int indexOf(long txNo) {
+        int n = size;
+        int i = lowerBoundById(n, txNo);
+        return i < n && txNo(i) == txNo ? i : -1;
+    }
+
+    // Find a transaction by number — O(log n)
+    public Transaction find(long txNo) {
+        int i = indexOf(txNo);
+        return i < 0 ? null : get(i);
+    }
+
+    // Number of entries with timestamp <= ts
+    private int upperBoundByTime(int n, long ts) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamp(mid) <= ts) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // Number of entries with a transaction number < txNo
+    private int lowerBoundById(int n, long txNo) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (txNo(mid) < txNo) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // "TX123" → 123
+    static long txNumber(String id) {
+        if (id.length() < 3 || !id.startsWith("TX")) throw new RuntimeException("Invalid transaction id: " + id);
+        long n = 0;
+        for (int i = 2; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') throw new RuntimeException("Invalid transaction id: " + id);
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    public String accountNumber() { return accountNumber; }
+
     public int size() { return size; }
 }
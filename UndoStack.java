@@ -1,9 +1,7 @@
 package bank;
 
-import java.util.ArrayList;
-
 /*
- * DSA: Stack (Last In, First Out)
+ * DSA: Stack (Last In, First Out) with a fixed capacity
  *
  * How it works:
  *   Think of a stack of plates.
@@ -16,28 +14,94 @@ import java.util.ArrayList;
  * We use this to undo the last transaction.
  * Every time a deposit or withdrawal happens, we push it here.
  * When the user clicks Undo, we pop the top item and reverse it.
+ *
+ * A plate is just (account number, transaction number) — two primitive
+ * arrays, no objects — and Bank looks the transaction up in that
+ * account's TransactionList when it is popped.
+ *
+ * Bounded:
+ *   Only the last `capacity` transactions can be undone. The plates sit in
+ *   a circular array; once it is full, a new push overwrites the OLDEST
+ *   plate at the bottom, so the stack never grows past its capacity.
+ *
+ *     capacity 4, after pushing tx1..tx5:
+ *       [tx5, tx2, tx3, tx4]      bottom = tx2, top = tx5
+ *
+ *   The arrays start small and double up to the capacity, so the many
+ *   per-account stacks that never see much use stay small.
+ *
+ * Every request thread pushes here, so each method is synchronized.
  */
 public class UndoStack {
 
-    private ArrayList<Transaction> stack = new ArrayList<>();
+    // One plate, as handed out by pop() and peek()
+    static final class Entry {
+        final int  accNo;
+        final long txNo;
+
+        Entry(int accNo, long txNo) {
+            this.accNo = accNo;
+            this.txNo  = txNo;
+        }
 
-    // Push a transaction onto the top of the stack
-    public void push(Transaction t) {
-        stack.add(t);
+        boolean is(int accNo, long txNo) {
+            return this.accNo == accNo && this.txNo == txNo;
+        }
+    }
+
+    private final int capacity;
+    private int[]  accNos;
+    private long[] txNos;
+    private int top;   // index where the next push goes
+    private int count; // how many plates are on the stack
+
+    public UndoStack(int capacity) {
+        this.capacity = capacity;
+        int initial   = Math.min(capacity, 4);
+        accNos = new int[initial];
+        txNos  = new long[initial];
+    }
+
+    // Push a transaction onto the top of the stack (drops the oldest when full)
+    public synchronized void push(int accNo, long txNo) {
+        if (count == txNos.length && count < capacity) grow();
+        accNos[top] = accNo;
+        txNos[top]  = txNo;
+        top = (top + 1) % txNos.length;
+        if (count < txNos.length) count++;
     }
 
     // Pop the top transaction off the stack (returns null if empty)
-    public Transaction pop() {
-        if (stack.isEmpty()) return null;
-        return stack.remove(stack.size() - 1); // remove from the end = top
+    public synchronized Entry pop() {
+        if (count == 0) return null;
+        top = (top - 1 + txNos.length) % txNos.length;
+        count--;
+        return new Entry(accNos[top], txNos[top]);
     }
 
     // Look at the top without removing
-    public Transaction peek() {
-        if (stack.isEmpty()) return null;
-        return stack.get(stack.size() - 1);
+    public synchronized Entry peek() {
+        if (count == 0) return null;
+        int i = (top - 1 + txNos.length) % txNos.length;
+        return new Entry(accNos[i], txNos[i]);
+    }
+
+    // Full and still below capacity: unroll the ring, bottom first, into bigger arrays
+    private void grow() {
+        int n = Math.min(capacity, txNos.length * 2);
+        int[]  a = new int[n];
+        long[] t = new long[n];
+        for (int k = 0; k < count; k++) {
+            int from = (top + k) % txNos.length; // top is also the bottom when full
+            a[k] = accNos[from];
+            t[k] = txNos[from];
+        }
+        accNos = a;
+        txNos  = t;
+        top    = count;
     }
 
-    public boolean isEmpty() { return stack.isEmpty(); }
-    public int size()        { return stack.size(); }
+    public synchronized boolean isEmpty() { return count == 0; }
+    public synchronized int size()        { return count; }
+    public int capacity()                 { return capacity; }
 }
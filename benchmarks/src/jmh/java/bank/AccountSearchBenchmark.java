@@ -0,0 +1,74 @@
+package bank;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Finding accounts, from 10K to 1M of them.
+ *
+ *   bstSearch      — AccountBST.search("ACC1234567"): the sorted index, O(log n)
+ *   tableGet       — AccountTable via Bank.getAccount: what requests use, O(1)
+ *   namePrefix     — searchByName("Priya S", 20): a common prefix, first page
+ *   nameExact      — searchByName of one full name: a single hit
+ *   nameMiss       — a prefix nobody has
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountSearchBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int accounts;
+
+    Bank       bank;
+    AccountBST bst;
+    int[]      ids;
+    String[]   idStrings;
+    String[]   names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bank = Fixtures.bank(accounts);
+        ids  = Fixtures.shuffledIds(bank);
+        bst  = new AccountBST(); // its own Account copies: the nodes are the accounts themselves
+        for (Account a : bank.getAllAccounts()) bst.insert(new Account(a.number, a.ownerName, a.email, a.balance, a.type));
+        idStrings = new String[4096];
+        names     = new String[4096];
+        for (int i = 0; i < idStrings.length; i++) {
+            Account a = bank.getAccount(ids[i % ids.length]);
+            idStrings[i] = a.accountNumber;
+            names[i]     = a.ownerName;
+        }
+    }
+
+    @Benchmark
+    public Account bstSearch() {
+        return bst.search(idStrings[ThreadLocalRandom.current().nextInt(idStrings.length)]);
+    }
+
+    @Benchmark
+    public Account tableGet() {
+        return bank.getAccount(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<Account> namePrefix() {
+        return bank.searchByName("Priya S", 20);
+    }
+
+    @Benchmark
+    public List<Account> nameExact() {
+        return bank.searchByName(names[ThreadLocalRandom.current().nextInt(names.length)], 20);
+    }
+
+    @Benchmark
+    public List<Account> nameMiss() {
+        return bank.searchByName("Zzyzx", 20);
+    }
+}
@@ -0,0 +1,56 @@
+package bank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Bank.deposit, in memory (no journal), so this is locking, bookkeeping
+ * and history appends — not fsync.
+ *
+ *   spread    — one thread, a random account each time
+ *   spread8   — 8 threads, random accounts: stripes rarely collide
+ *   hot8      — 8 threads, all on the same 8 accounts: they queue on the
+ *               same stripe locks, which is the contention case
+ *
+ * The bank is rebuilt every iteration, so history and the undo stack
+ * don't keep growing across the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DepositBenchmark {
+
+    @Param({"10000", "1000000"})
+    int accounts;
+
+    Bank  bank;
+    int[] ids;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bank = Fixtures.bank(accounts);
+        ids  = Fixtures.shuffledIds(bank);
+    }
+
+    @Benchmark
+    public Transaction spread() {
+        return bank.deposit(ids[ThreadLocalRandom.current().nextInt(ids.length)], 100_00, "Bench");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Transaction spread8() {
+        return bank.deposit(ids[ThreadLocalRandom.current().nextInt(ids.length)], 100_00, "Bench");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Transaction hot8() {
+        return bank.deposit(ids[ThreadLocalRandom.current().nextInt(8)], 100_00, "Bench");
+    }
+}
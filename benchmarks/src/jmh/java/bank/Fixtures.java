@@ -0,0 +1,60 @@
+package bank;
+
+import java.util.Random;
+
+/*
+ * Test data shared by the JMH benchmarks: banks of a given size, names
+ * that look like names (so the name index has realistic prefixes to share),
+ * and account ids in a random order.
+ */
+final class Fixtures {
+
+    private Fixtures() { }
+
+    private static final String[] FIRST = {
+        "Aarav", "Alice", "Ananya", "Arjun", "Bob", "Charlie", "Deepa", "Diana", "Farhan", "Grace",
+        "Isha", "Kabir", "Meera", "Neha", "Priya", "Rahul", "Riya", "Rohan", "Sara", "Vikram"
+    };
+    private static final String[] LAST = {
+        "Bose", "Das", "Gupta", "Iyer", "Johnson", "Kapoor", "Khan", "Menon", "Nair", "Patel",
+        "Rao", "Reddy", "Sharma", "Singh", "Smith", "Verma"
+    };
+
+    static String name(int i) {
+        return FIRST[i % FIRST.length] + " " + LAST[(i / FIRST.length) % LAST.length] + " " + i;
+    }
+
+    // An in-memory Bank (no journal) with `accounts` accounts on top of the demo ones
+    static Bank bank(int accounts) {
+        Bank bank = new Bank();
+        for (int i = 0; i < accounts; i++) {
+            bank.createAccount(name(i), "owner" + i + "@mail.com", 1_000_000_00, i % 3 == 0 ? "CURRENT" : "SAVINGS");
+        }
+        return bank;
+    }
+
+    // Every account number in the bank, shuffled
+    static int[] shuffledIds(Bank bank) {
+        int[] ids = bank.getAllAccounts().stream().mapToInt(a -> a.number).toArray();
+        Random rnd = new Random(42);
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = ids[i]; ids[i] = ids[j]; ids[j] = t;
+        }
+        return ids;
+    }
+
+    // A history of `depth` deposits and withdrawals, one a minute
+    static TransactionList history(int depth) {
+        TransactionList list = new TransactionList("ACC1001", new NoteArena());
+        long balance = 0, ts = 1_700_000_000_000L;
+        for (int i = 0; i < depth; i++) {
+            boolean deposit = i % 3 != 2;
+            long amount = 100_00 + i % 5_000;
+            balance += deposit ? amount : -amount;
+            list.add(i + 1, deposit ? Transaction.DEPOSIT : Transaction.WITHDRAW, amount, balance,
+                     ts + i * 60_000L, 0, deposit ? "Salary credit" : "ATM withdrawal");
+        }
+        return list;
+    }
+}
@@ -0,0 +1,56 @@
+package bank;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Reading one account's history at depths from 1K to 1M transactions.
+ *
+ *   getAll      — TransactionList.getAll: a Transaction view per entry,
+ *                 so time and allocation grow with depth
+ *   firstPage   — the newest 50, as GET .../history?limit=50 does
+ *   deepPage    — 50 from the middle, by beforeTxId cursor (binary search)
+ *   find        — one transaction by number, as undo does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int depth;
+
+    TransactionList history;
+    String          middle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        history = Fixtures.history(depth);
+        middle  = "TX" + (depth / 2);
+    }
+
+    @Benchmark
+    public List<Transaction> getAll() {
+        return history.getAll();
+    }
+
+    @Benchmark
+    public List<Transaction> firstPage() {
+        return history.page(Long.MIN_VALUE, Long.MAX_VALUE, null, 50);
+    }
+
+    @Benchmark
+    public List<Transaction> deepPage() {
+        return history.page(Long.MIN_VALUE, Long.MAX_VALUE, middle, 50);
+    }
+
+    @Benchmark
+    public Transaction find() {
+        return history.find(depth / 3 + 1);
+    }
+}
@@ -0,0 +1,91 @@
+package bank;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * The Server's JSON helpers, without the HTTP around them.
+ *
+ * Writing goes through a JsonWriter whose target only counts bytes, so
+ * this is encoding alone:
+ *   writeAccounts      — one page of 100 accounts (GET /api/accounts?limit=100)
+ *   writePage          — 50 history entries, a default history page
+ *   writeLong          — 1,000 history entries
+ *
+ * Reading binds request bodies the way the handlers do:
+ *   readDeposit        — {"amount":"1250.50","note":"Salary credit"}
+ *   readBatch          — a 1,000-operation /api/batch body
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    List<Account>     accounts;
+    List<Transaction> page;
+    List<Transaction> longPage;
+    byte[]            deposit;
+    byte[]            batch;
+    long              written;
+
+    final JsonWriter.Target sink = (b, len, last) -> written += len;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accounts = Fixtures.bank(1_000).getAccountsAfter(null, 100);
+        longPage = Fixtures.history(1_000).getAll();
+        page     = longPage.subList(0, 50);
+        deposit  = "{\"amount\":\"1250.50\",\"note\":\"Salary credit\"}".getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder("{\"operations\":[");
+        for (int i = 0; i < 1_000; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(i % 4 == 3
+                ? "{\"type\":\"transfer\",\"account\":\"ACC" + (1001 + i % 500) + "\",\"to\":\"ACC" + (1501 + i % 500) + "\",\"amount\":\"12.50\"}"
+                : "{\"type\":\"deposit\",\"account\":\"ACC" + (1001 + i % 1000) + "\",\"amount\":\"100\",\"note\":\"Payroll\"}");
+        }
+        batch = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long writeAccounts() throws IOException {
+        try (JsonWriter w = new JsonWriter(sink)) {
+            Server.writeAccounts(w, accounts);
+        }
+        return written;
+    }
+
+    @Benchmark
+    public long writePage() throws IOException {
+        try (JsonWriter w = new JsonWriter(sink)) {
+            Server.writeTransactions(w, page);
+        }
+        return written;
+    }
+
+    @Benchmark
+    public long writeLong() throws IOException {
+        try (JsonWriter w = new JsonWriter(sink)) {
+            Server.writeTransactions(w, longPage);
+        }
+        return written;
+    }
+
+    @Benchmark
+    public Requests.Movement readDeposit() throws IOException {
+        return Requests.Movement.read(new JsonReader(new ByteArrayInputStream(deposit)), "Deposit");
+    }
+
+    @Benchmark
+    public List<BatchOp> readBatch() throws IOException {
+        return Requests.readBatch(new JsonReader(new ByteArrayInputStream(batch)));
+    }
+}
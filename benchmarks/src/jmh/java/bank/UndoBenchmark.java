@@ -0,0 +1,57 @@
+package bank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Bank.undo, global and per account. There has to be something to undo,
+ * so each operation is a deposit followed by its undo; subtract
+ * DepositBenchmark.spread for the undo alone.
+ *
+ *   global      — undo() pops the bank-wide stack
+ *   account     — undo(accNo) pops that account's own stack
+ *   account8    — the same from 8 threads on random accounts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UndoBenchmark {
+
+    @Param({"10000", "1000000"})
+    int accounts;
+
+    Bank  bank;
+    int[] ids;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bank = Fixtures.bank(accounts);
+        ids  = Fixtures.shuffledIds(bank);
+    }
+
+    @Benchmark
+    public String global() {
+        bank.deposit(ids[ThreadLocalRandom.current().nextInt(ids.length)], 100_00, "Bench");
+        return bank.undo();
+    }
+
+    @Benchmark
+    public String account() {
+        int id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        bank.deposit(id, 100_00, "Bench");
+        return bank.undo(id);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String account8() {
+        int id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        bank.deposit(id, 100_00, "Bench");
+        return bank.undo(id);
+    }
+}
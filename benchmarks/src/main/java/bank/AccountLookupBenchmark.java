@@ -0,0 +1,91 @@
+package bank;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Account lookups: the old String-keyed maps vs AccountTable.
+ *
+ *   java -cp out:bench-out bank.AccountLookupBenchmark [accounts] [lookups]
+ *
+ * Defaults to 1M accounts and 50M lookups of random existing accounts.
+ * Each lookup does what a deposit request needs before it can take a lock:
+ *   - old:  parse nothing, hash "ACC1234567" in the accounts map, then
+ *           again in the history map
+ *   - new:  parse the id to 1234567 once, one probe in AccountTable
+ * The ids are built up front and hashed fresh each time (new Strings, as
+ * they arrive from a request path), so the old path pays for String.hashCode.
+ *
+ * Also prints the heap each structure takes, with the accounts themselves
+ * left out.
+ */
+public class AccountLookupBenchmark {
+
+    public static void main(String[] args) {
+        int  accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long lookups  = args.length > 1 ? Long.parseLong(args[1])    : 50_000_000L;
+        System.out.printf("%,d lookups over %,d accounts%n", lookups, accounts);
+
+        Account[] all = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            all[i] = new Account(1001 + i, "Owner " + i, "owner@mail.com", 0, "SAVINGS");
+            all[i].history = new TransactionList(all[i].accountNumber, null);
+        }
+        // Ids as request paths would carry them, 4,096 of them reused round-robin
+        String[] ids = new String[4096];
+        Random rnd = new Random(42);
+        for (int i = 0; i < ids.length; i++) ids[i] = "ACC" + (1001 + rnd.nextInt(accounts));
+
+        long before = usedHeap();
+        Map<String, Account>         byId    = new ConcurrentHashMap<>();
+        Map<String, TransactionList> history = new ConcurrentHashMap<>();
+        for (Account a : all) {
+            byId.put(a.accountNumber, a);
+            history.put(a.accountNumber, a.history);
+        }
+        long mapBytes = usedHeap() - before;
+
+        before = usedHeap();
+        AccountTable table = new AccountTable();
+        for (Account a : all) table.put(a);
+        long tableBytes = usedHeap() - before;
+
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            long t0 = System.nanoTime(), sink = 0;
+            for (long n = 0; n < lookups; n++) {
+                String id = new String(ids[(int) (n & 4095)]);
+                Account a = byId.get(id);
+                sink += a.number + history.get(id).size();
+            }
+            long mapNs = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            for (long n = 0; n < lookups; n++) {
+                String id = new String(ids[(int) (n & 4095)]);
+                Account a = table.get(Bank.accountNo(id));
+                sink += a.number + a.history.size();
+            }
+            long tableNs = System.nanoTime() - t0;
+
+            if (sink == 42) System.out.println(); // keep the loops from being optimised away
+            System.out.printf("round %d: two ConcurrentHashMaps %.1f ns/lookup, AccountTable %.1f ns/lookup%n",
+                              round + 1, (double) mapNs / lookups, (double) tableNs / lookups);
+        }
+        System.out.printf("heap: two ConcurrentHashMaps %,d bytes (%.1f/account), AccountTable %,d bytes (%.1f/account)%n",
+                          mapBytes, (double) mapBytes / accounts, tableBytes, (double) tableBytes / accounts);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,235 @@
+package bank;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * HTTP load driver: sends a mix of requests to a Server and reports
+ * throughput and latency percentiles.
+ *
+ *   java -cp out:bench-out bank.HttpLoadDriver closed [connections] [seconds]
+ *   java -cp out:bench-out bank.HttpLoadDriver open   [requests/s]  [seconds]
+ *
+ * Defaults: closed, 64 connections / 10,000 requests/s, 30 seconds.
+ *
+ * Which server:
+ *   -Dbank.url=http://host:port   drive a server that is already running
+ *   (not set)                     start one in this JVM on -Dbank.port
+ *                                 (default 8089), in memory unless
+ *                                 -Dbank.journal=true; every other
+ *                                 -Dbank.* flag reaches it too
+ *
+ * Before the run it opens -Dbank.load.accounts accounts (default 1,000)
+ * and then sends, per 100 requests:
+ *   50 deposits · 20 account reads · 20 history pages · 10 transfers
+ *
+ * Closed loop: each of `connections` threads sends a request, waits for
+ * the reply, sends the next. Throughput is whatever the server manages.
+ * But while a reply is slow that thread sends nothing, so a stall is
+ * counted once instead of once per request a real client would have
+ * sent meanwhile — closed-loop percentiles flatter the server.
+ *
+ * Open loop: requests are due at a fixed rate, whatever the server does,
+ * and latency is measured from when each was due, not when it went out.
+ * A stall shows up in every request queued behind it. Past the server's
+ * capacity latency climbs for the whole run; that is the answer, not a bug.
+ * At most -Dbank.load.inflight requests (default 10,000) are outstanding;
+ * beyond that a request is counted as shed rather than sent late.
+ *
+ * The first -Dbank.load.warmup seconds (default 5) are not recorded.
+ */
+public class HttpLoadDriver {
+
+    private static final String[] KINDS = { "deposit", "get", "history", "transfer" };
+
+    private static final Pattern ACCOUNT_NUMBER = Pattern.compile("\"accountNumber\":\"(ACC\\d+)\"");
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    private final String base;
+    private String[] accounts;
+
+    // Latency in ns, per request kind and overall
+    private final Histogram[] latency = new Histogram[KINDS.length];
+    private final Histogram   all     = new Histogram();
+    private final LongAdder   errors  = new LongAdder();
+    private final LongAdder   shed    = new LongAdder();
+
+    private HttpLoadDriver(String base) {
+        this.base = base;
+        for (int i = 0; i < KINDS.length; i++) latency[i] = new Histogram();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode    = args.length > 0 ? args[0] : "closed";
+        boolean open   = mode.equals("open");
+        if (!open && !mode.equals("closed")) throw new IllegalArgumentException("Mode is closed or open, not " + mode);
+        int load       = args.length > 1 ? Integer.parseInt(args[1]) : (open ? 10_000 : 64);
+        int seconds    = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmup     = Integer.getInteger("bank.load.warmup", 5);
+        int nAccounts  = Math.max(2, Integer.getInteger("bank.load.accounts", 1_000));
+
+        String base = System.getProperty("bank.url");
+        if (base == null) base = startServer();
+
+        HttpLoadDriver driver = new HttpLoadDriver(base);
+        driver.openAccounts(nAccounts);
+        System.out.printf("%s loop, %,d %s, %d s (+%d s warm-up) against %s, %,d accounts%n",
+                          mode, load, open ? "requests/s" : "connections", seconds, warmup, base, nAccounts);
+
+        long start   = System.nanoTime();
+        long measure = start + warmup * 1_000_000_000L;
+        long end     = measure + seconds * 1_000_000_000L;
+        if (open) driver.openLoop(load, start, measure, end);
+        else      driver.closedLoop(load, measure, end);
+        driver.report(seconds);
+        System.exit(0); // the in-process server's threads would keep us alive
+    }
+
+    // A Server in this JVM; in memory unless asked otherwise
+    private static String startServer() throws Exception {
+        if (System.getProperty("bank.journal") == null) System.setProperty("bank.journal", "false");
+        if (System.getProperty("bank.port") == null)    System.setProperty("bank.port", "8089");
+        new Server().start();
+        return "http://localhost:" + System.getProperty("bank.port");
+    }
+
+    private void openAccounts(int n) throws Exception {
+        accounts = new String[n];
+        for (int i = 0; i < n; i++) {
+            HttpResponse<String> r = client.send(post("/api/accounts",
+                "{\"ownerName\":\"Load " + i + "\",\"email\":\"load" + i + "@mail.com\",\"balance\":\"1000000\",\"type\":\"SAVINGS\"}"),
+                HttpResponse.BodyHandlers.ofString());
+            Matcher m = ACCOUNT_NUMBER.matcher(r.body());
+            if (r.statusCode() != 201 && r.statusCode() != 200 || !m.find()) {
+                throw new IllegalStateException("Could not open an account: " + r.statusCode() + " " + r.body());
+            }
+            accounts[i] = m.group(1);
+        }
+    }
+
+    // ── Closed loop ──────────────────────────────────────────────────────────
+    private void closedLoop(int connections, long measure, long end) throws InterruptedException {
+        Thread[] ts = new Thread[connections];
+        for (int t = 0; t < connections; t++) {
+            ts[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    int kind = pick(rnd);
+                    boolean ok;
+                    try {
+                        ok = client.send(request(kind, rnd), HttpResponse.BodyHandlers.discarding()).statusCode() < 400;
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    if (now >= measure) record(kind, System.nanoTime() - now, ok);
+                }
+            }, "load-" + t);
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+    }
+
+    // ── Open loop ────────────────────────────────────────────────────────────
+    private void openLoop(int perSecond, long start, long measure, long end) throws InterruptedException {
+        int maxInFlight = Integer.getInteger("bank.load.inflight", 10_000);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        double interval = 1e9 / perSecond;
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (long i = 0; ; i++) {
+            long due = start + (long) (i * interval);
+            if (due >= end) break;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                if (wait > 50_000) LockSupport.parkNanos(wait - 20_000);
+                else Thread.onSpinWait();
+            }
+            boolean measured = due >= measure;
+            if (!inFlight.tryAcquire()) {
+                if (measured) shed.increment();
+                continue;
+            }
+            int kind = pick(rnd);
+            CompletableFuture<HttpResponse<Void>> f = client.sendAsync(request(kind, rnd), HttpResponse.BodyHandlers.discarding());
+            f.whenComplete((r, e) -> {
+                inFlight.release();
+                if (measured) record(kind, System.nanoTime() - due, e == null && r.statusCode() < 400);
+            });
+        }
+        // Wait for the stragglers
+        inFlight.acquire(maxInFlight);
+    }
+
+    // ── Requests ─────────────────────────────────────────────────────────────
+    private static int pick(ThreadLocalRandom rnd) {
+        int p = rnd.nextInt(100);
+        return p < 50 ? 0 : p < 70 ? 1 : p < 90 ? 2 : 3;
+    }
+
+    private HttpRequest request(int kind, ThreadLocalRandom rnd) {
+        int a = rnd.nextInt(accounts.length);
+        switch (kind) {
+            case 0:
+                return post("/api/accounts/" + accounts[a] + "/deposit", "{\"amount\":\"10.00\",\"note\":\"Load\"}");
+            case 1:
+                return get("/api/accounts/" + accounts[a]);
+            case 2:
+                return get("/api/accounts/" + accounts[a] + "/history?limit=50");
+            default:
+                int b = rnd.nextInt(accounts.length - 1);
+                if (b >= a) b++; // never the same account
+                return post("/api/transfers", "{\"from\":\"" + accounts[a] + "\",\"to\":\"" + accounts[b] +
+                                              "\",\"amount\":\"0.01\",\"note\":\"Load\"}");
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+            .timeout(Duration.ofSeconds(30))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    // ── Results ──────────────────────────────────────────────────────────────
+    private void record(int kind, long ns, boolean ok) {
+        if (!ok) {
+            errors.increment();
+            return;
+        }
+        latency[kind].record(ns);
+        all.record(ns);
+    }
+
+    private void report(int seconds) {
+        System.out.printf("  requests: %,d ok (%,d/s), %,d errors, %,d shed%n",
+                          all.count(), all.count() / seconds, errors.sum(), shed.sum());
+        System.out.printf("  %-10s %10s %10s %10s %10s %10s %10s%n", "us", "count", "p50", "p90", "p99", "p99.9", "max");
+        row("all", all);
+        for (int i = 0; i < KINDS.length; i++) row(KINDS[i], latency[i]);
+    }
+
+    private static void row(String name, Histogram h) {
+        long[] p = h.percentiles(0.50, 0.90, 0.99, 0.999);
+        System.out.printf("  %-10s %,10d %,10d %,10d %,10d %,10d %,10d%n", name, h.count(),
+                          p[0] / 1000, p[1] / 1000, p[2] / 1000, p[3] / 1000, h.max() / 1000);
+    }
+}
@@ -0,0 +1,144 @@
+package bank;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Request parsing: the old regex readBody vs JsonReader + Requests.
+ *
+ *   java -cp out:bench-out bank.JsonParserBenchmark [iterations] [batchSize]
+ *
+ * Parses the same bodies both ways and prints time and bytes allocated
+ * per body:
+ *   - a deposit            {"amount":"1250.50","note":"Salary credit"}
+ *   - an account creation  (five fields)
+ *   - a batch of batchSize operations (default 1,000)
+ *
+ * The legacy parser below is a copy of what Server.readBody used to do,
+ * kept here only so the comparison can be rerun.
+ */
+public class JsonParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int batchSize  = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        byte[] deposit = "{\"amount\":\"1250.50\",\"note\":\"Salary credit\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] create  = ("{\"ownerName\":\"Alice Johnson\",\"email\":\"alice@email.com\"," +
+                          "\"balance\":\"5000\",\"type\":\"SAVINGS\",\"note\":\"x\"}").getBytes(StandardCharsets.UTF_8);
+        byte[] batch   = batchBody(batchSize);
+        int batchIterations = Math.max(10, iterations / batchSize);
+
+        System.out.printf("%,d iterations (%,d for the %,d-op batch)%n", iterations, batchIterations, batchSize);
+        for (int round = 0; round < 2; round++) { // first round warms up the JIT
+            boolean print = round == 1;
+            measure(print, "deposit  legacy", iterations, () -> {
+                Map<String, String> m = legacyReadBody(new ByteArrayInputStream(deposit));
+                return Money.parse(m.get("amount"));
+            });
+            measure(print, "deposit  reader", iterations, () ->
+                Requests.Movement.read(new JsonReader(new ByteArrayInputStream(deposit), deposit.length), "Deposit").amount);
+            measure(print, "create   legacy", iterations, () ->
+                legacyReadBody(new ByteArrayInputStream(create)).size());
+            measure(print, "create   reader", iterations, () ->
+                Requests.CreateAccount.read(new JsonReader(new ByteArrayInputStream(create), create.length)).balance);
+            measure(print, "batch    legacy", batchIterations, () -> {
+                long sum = 0;
+                for (Map<String, String> o : legacyReadObjects(new ByteArrayInputStream(batch))) sum += Money.parse(o.get("amount"));
+                return sum;
+            });
+            measure(print, "batch    reader", batchIterations, () -> {
+                long sum = 0;
+                for (BatchOp op : Requests.readBatch(new JsonReader(new ByteArrayInputStream(batch), batch.length))) sum += op.amount;
+                return sum;
+            });
+        }
+    }
+
+    interface Body { long parse() throws IOException; }
+
+    private static long sink;
+
+    private static void measure(boolean print, String name, int iterations, Body body) throws IOException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid    = Thread.currentThread().getId();
+        long bytes0 = mx.getThreadAllocatedBytes(tid);
+        long t0     = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += body.parse();
+        long ns     = System.nanoTime() - t0;
+        long bytes  = mx.getThreadAllocatedBytes(tid) - bytes0;
+        if (print) {
+            System.out.printf("  %s  %,10d ns/body  %,10d bytes/body%n", name, ns / iterations, bytes / iterations);
+        }
+    }
+
+    private static byte[] batchBody(int n) {
+        StringBuilder sb = new StringBuilder("{\"operations\":[");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"type\":\"").append(i % 3 == 0 ? "withdraw" : "deposit")
+              .append("\",\"account\":\"ACC").append(1001 + i % 500)
+              .append("\",\"amount\":\"").append(10 + i % 90).append(".25\",\"note\":\"Settlement ").append(i).append("\"}");
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ── The old parser, as Server used to have it ────────────────────────────
+
+    private static Map<String, String> legacyReadBody(InputStream is) throws IOException {
+        return legacyParseFlat(legacyReadRaw(is));
+    }
+
+    private static List<Map<String, String>> legacyReadObjects(InputStream is) throws IOException {
+        String raw = legacyReadRaw(is);
+        List<Map<String, String>> list = new ArrayList<>();
+        int depth = 0, start = -1;
+        boolean inString = false;
+        for (int i = raw.indexOf('[') + 1; i > 0 && i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' && depth++ == 0) {
+                start = i;
+            } else if (c == '}' && --depth == 0) {
+                list.add(legacyParseFlat(raw.substring(start, i + 1)));
+            } else if (c == ']' && depth == 0) {
+                break;
+            }
+        }
+        return list;
+    }
+
+    private static String legacyReadRaw(InputStream is) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = is.read(chunk)) != -1) buf.write(chunk, 0, n);
+        return buf.toString("UTF-8").trim();
+    }
+
+    private static Map<String, String> legacyParseFlat(String raw) {
+        Map<String, String> map = new LinkedHashMap<>();
+        raw = raw.replaceAll("^\\{|\\}$", ""); // strip { and }
+        // Split on commas that are not inside quotes
+        for (String pair : raw.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)")) {
+            String[] kv = pair.split(":", 2);
+            if (kv.length == 2) {
+                map.put(kv[0].trim().replaceAll("\"", ""),
+                        kv[1].trim().replaceAll("\"", ""));
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,120 @@
+package bank;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/*
+ * Locked mode vs engine mode (LedgerEngine) on the same workload.
+ *
+ *   java -cp out:bench-out bank.LedgerEngineBenchmark [accounts] [hot] [threads] [seconds] [journal]
+ *
+ * Defaults: 10,000 accounts, 16 hot, 4 threads per core, 10 seconds per
+ * mode, no journal (pass "journal" to add one with group commit, so fsync
+ * cost is included). Every thread runs a mix of 50% deposits, 25%
+ * withdrawals and 25% transfers; 90% of them hit the hot accounts.
+ *
+ * Prints throughput and latency percentiles for each mode.
+ */
+public class LedgerEngineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int     accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int     hot      = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int     threads  = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 4;
+        int     seconds  = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        boolean journal  = args.length > 4 && args[4].equals("journal");
+
+        System.out.printf("%,d accounts (%d hot), %d threads, %d s per mode, %s%n",
+                          accounts, hot, threads, seconds, journal ? "journaled" : "in memory");
+        for (String mode : new String[] { "locked", "engine" }) {
+            run(mode, accounts, hot, threads, seconds, journal);
+        }
+    }
+
+    private static void run(String mode, int accounts, int hot, int threads, int seconds, boolean journaled)
+            throws Exception {
+        Path dir = journaled ? Files.createTempDirectory("bank-engine") : null;
+        Bank bank = journaled ? new Bank(dir, 1000) : new Bank();
+        int[] ids = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = bank.createAccount("Owner " + i, "owner" + i + "@mail.com", 1_000_000_00, "SAVINGS").number;
+        }
+        if (mode.equals("engine")) bank.startEngine(65_536);
+
+        // Each thread keeps its own latency samples (every 16th op)
+        long[][] samples = new long[threads][];
+        long[] ops = new long[threads];
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            ts[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long[] lat = new long[1 << 16];
+                int n = 0;
+                long count = 0;
+                while (System.nanoTime() < end) {
+                    int range = rnd.nextInt(10) < 9 ? hot : accounts;
+                    int a = ids[rnd.nextInt(range)];
+                    long start = System.nanoTime();
+                    try {
+                        int kind = rnd.nextInt(4);
+                        if (kind < 2) {
+                            bank.deposit(a, 1 + rnd.nextInt(1000_00), "Bench");
+                        } else if (kind == 2) {
+                            bank.withdraw(a, 1 + rnd.nextInt(1000_00), "Bench");
+                        } else {
+                            int b = ids[rnd.nextInt(range)];
+                            if (b != a) bank.transfer(a, b, 1 + rnd.nextInt(1000_00), "Bench");
+                        }
+                    } catch (RuntimeException ignored) {
+                        // insufficient funds — still a completed request
+                    }
+                    if ((count++ & 15) == 0) {
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = System.nanoTime() - start;
+                    }
+                }
+                ops[id] = count;
+                samples[id] = Arrays.copyOf(lat, n);
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+        bank.close();
+
+        long total = 0;
+        int  n = 0;
+        for (int t = 0; t < threads; t++) {
+            total += ops[t];
+            n += samples[t].length;
+        }
+        long[] all = new long[n];
+        int at = 0;
+        for (long[] s : samples) {
+            System.arraycopy(s, 0, all, at, s.length);
+            at += s.length;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("  %-7s %,12d ops/s   p50 %,8d us   p99 %,8d us   p99.9 %,8d us   max %,8d us%n",
+                          mode, total / seconds, pct(all, 0.50), pct(all, 0.99), pct(all, 0.999),
+                          all.length == 0 ? 0 : all[all.length - 1] / 1000);
+
+        if (dir != null) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static long pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * p))] / 1000;
+    }
+}
@@ -0,0 +1,98 @@
+package bank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/*
+ * Startup time: full journal replay vs snapshot + journal tail.
+ *
+ *   java -Xmx12g -cp out:bench-out bank.SnapshotStartupBenchmark [accounts] [transactions] [threads]
+ *
+ * Defaults to 1M accounts and 10M transactions. Steps:
+ *   1. Load the accounts and transactions through a journaled Bank.
+ *   2. Restart from the journal alone and time it.
+ *   3. Take a snapshot, add 1% more transactions as the journal tail.
+ *   4. Restart from snapshot + tail and time it.
+ */
+public class SnapshotStartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int  accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long txs      = args.length > 1 ? Long.parseLong(args[1])    : 10_000_000L;
+        int  threads  = args.length > 2 ? Integer.parseInt(args[2])  : Runtime.getRuntime().availableProcessors() * 4;
+
+        Path dir = Files.createTempDirectory("bank-startup");
+        try {
+            System.out.printf("Loading %,d accounts and %,d transactions into %s%n", accounts, txs, dir);
+            Bank bank = new Bank(dir, 1000);
+            long t0 = System.nanoTime();
+            load(bank, accounts, txs, threads);
+            System.out.printf("  load:                  %,8d ms  (%s on disk)%n", ms(t0), size(dir));
+            bank.close();
+            bank = null;
+
+            long t1 = System.nanoTime();
+            bank = new Bank(dir, 1000);
+            System.out.printf("  start from journal:    %,8d ms%n", ms(t1));
+
+            long t2 = System.nanoTime();
+            bank.snapshot();
+            System.out.printf("  snapshot:              %,8d ms  (%s on disk)%n", ms(t2), size(dir));
+            load(bank, 0, txs / 100, threads);
+            bank.close();
+            bank = null;
+
+            long t3 = System.nanoTime();
+            bank = new Bank(dir, 1000);
+            System.out.printf("  start from snapshot:   %,8d ms  (+%,d tail transactions)%n", ms(t3), txs / 100);
+            bank.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    // Open accounts, then spread deposits and small withdrawals over them from many threads
+    private static void load(Bank bank, int accounts, long txs, int threads) throws InterruptedException {
+        runParallel(threads, accounts, i -> bank.createAccount("Owner " + i, "owner" + i + "@mail.com", 1000_00, i % 2 == 0 ? "SAVINGS" : "CURRENT"));
+        int total = bank.accountCounterValue() - 1000;
+        runParallel(threads, txs, i -> {
+            int acc = 1001 + ThreadLocalRandom.current().nextInt(total);
+            if (i % 4 == 0) {
+                try { bank.withdraw(acc, 1_00, "ATM"); } catch (RuntimeException ignored) { }
+            } else {
+                bank.deposit(acc, 2_50, "Salary credit");
+            }
+        });
+    }
+
+    interface Task { void run(long i); }
+
+    private static void runParallel(int threads, long count, Task task) throws InterruptedException {
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            ts[t] = new Thread(() -> {
+                for (long i = id; i < count; i += threads) task.run(i);
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+    }
+
+    private static long ms(long start) { return (System.nanoTime() - start) / 1_000_000; }
+
+    private static String size(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            long bytes = files.mapToLong(p -> p.toFile().length()).sum();
+            return String.format("%,d MB", bytes >> 20);
+        } catch (IOException e) {
+            return "?";
+        }
+    }
+}
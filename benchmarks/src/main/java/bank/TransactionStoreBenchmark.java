@@ -0,0 +1,159 @@
+package bank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Heap per transaction: the old linked list of Transaction objects vs the
+ * columnar TransactionList.
+ *
+ *   java -Xmx8g -cp out:bench-out bank.TransactionStoreBenchmark [accounts] [transactions]
+ *
+ * Defaults to 100,000 accounts and 5M transactions, spread evenly. Each
+ * store is filled the way Bank fills it, with the heap measured (after
+ * a few GCs) before and after. 90% of the notes are one of a few common
+ * texts; they arrive as new Strings, as they would from a request body,
+ * so the old store keeps a copy per transaction just as it did. The rest
+ * are unique.
+ *
+ * Then a page of 50 from every 100th account's history, from each store.
+ * The old store hands back the objects it already holds; the columnar one
+ * builds a Transaction (id, note, type name) for each entry it returns,
+ * which the old store had paid for up front when filling.
+ *
+ * The old store below is a copy of what Transaction and TransactionList
+ * used to be, kept here only so the comparison can be rerun.
+ */
+public class TransactionStoreBenchmark {
+
+    private static final String[] COMMON = { "Deposit", "Withdrawal", "Salary credit", "Transfer", "ATM withdrawal" };
+
+    public static void main(String[] args) {
+        int  accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long txs      = args.length > 1 ? Long.parseLong(args[1])    : 5_000_000L;
+        System.out.printf("%,d transactions over %,d accounts%n", txs, accounts);
+
+        long before = usedHeap();
+        LegacyList[] legacy = new LegacyList[accounts];
+        for (int a = 0; a < accounts; a++) legacy[a] = new LegacyList();
+        long t0 = System.nanoTime();
+        for (long n = 1; n <= txs; n++) {
+            int a = (int) (n % accounts);
+            legacy[a].add(new LegacyTransaction("TX" + n, "ACC" + (1001 + a), "DEPOSIT", n, n * 2, note(n), n));
+        }
+        long legacyMs = (System.nanoTime() - t0) / 1_000_000;
+        long legacyBytes = usedHeap() - before;
+        report("linked list", legacyBytes, txs, legacyMs);
+        long legacyPage = pages(legacy);
+        legacy = null;
+
+        before = usedHeap();
+        NoteArena notes = new NoteArena();
+        TransactionList[] columnar = new TransactionList[accounts];
+        for (int a = 0; a < accounts; a++) columnar[a] = new TransactionList("ACC" + (1001 + a), notes);
+        t0 = System.nanoTime();
+        for (long n = 1; n <= txs; n++) {
+            int a = (int) (n % accounts);
+            columnar[a].add(n, Transaction.DEPOSIT, n, n * 2, n, 0, note(n));
+        }
+        long columnarMs = (System.nanoTime() - t0) / 1_000_000;
+        long columnarBytes = usedHeap() - before;
+        report("columnar", columnarBytes, txs, columnarMs);
+        System.out.printf("  %.1fx smaller; note arena holds %,d bytes%n",
+                          (double) legacyBytes / columnarBytes, notes.bytes());
+        long columnarPage = pages(columnar);
+
+        System.out.printf("history pages (50 each, every 100th account): linked list %,d us, columnar %,d us%n",
+                          legacyPage / 1_000, columnarPage / 1_000);
+    }
+
+    private static String note(long n) {
+        if (n % 10 == 0) return "Invoice " + n;
+        return new String(COMMON[(int) (n % COMMON.length)]); // a fresh copy, like a parsed request
+    }
+
+    private static void report(String name, long bytes, long txs, long ms) {
+        System.out.printf("  %-12s %,14d bytes  %6.1f bytes/tx  filled in %,d ms%n", name, bytes, (double) bytes / txs, ms);
+    }
+
+    private static long pages(LegacyList[] lists) {
+        long t0 = System.nanoTime(), sink = 0;
+        for (int a = 0; a < lists.length; a += 100) sink += lists[a].page(0, Long.MAX_VALUE, null, 50).size();
+        return sink < 0 ? 0 : System.nanoTime() - t0;
+    }
+
+    private static long pages(TransactionList[] lists) {
+        long t0 = System.nanoTime(), sink = 0;
+        for (int a = 0; a < lists.length; a += 100) sink += lists[a].page(0, Long.MAX_VALUE, null, 50).size();
+        return sink < 0 ? 0 : System.nanoTime() - t0;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // ── The old store, as Transaction and TransactionList used to be ─────────
+
+    static final class LegacyTransaction {
+        String id, accountNumber, type, note, reverses, counterparty;
+        long   amount, balanceAfter, timestamp;
+        volatile boolean reversed;
+        LegacyTransaction next;
+
+        LegacyTransaction(String id, String accountNumber, String type, long amount, long balanceAfter,
+                          String note, long timestamp) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.type = type;
+            this.amount = amount;
+            this.balanceAfter = balanceAfter;
+            this.note = note;
+            this.timestamp = timestamp;
+        }
+    }
+
+    static final class LegacyList {
+        private volatile LegacyTransaction head;
+        private volatile LegacyTransaction[] index = new LegacyTransaction[4];
+        private volatile int size;
+
+        void add(LegacyTransaction t) {
+            if (head != null && t.timestamp < head.timestamp) t.timestamp = head.timestamp;
+            LegacyTransaction[] arr = index;
+            if (size == arr.length) {
+                arr = Arrays.copyOf(arr, size * 2);
+                index = arr;
+            }
+            arr[size] = t;
+            t.next = head;
+            head   = t;
+            size++;
+        }
+
+        List<LegacyTransaction> page(long from, long to, String beforeTxId, int limit) {
+            int n = size;
+            LegacyTransaction[] arr = index;
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (arr[mid].timestamp <= to) lo = mid + 1; else hi = mid;
+            }
+            List<LegacyTransaction> result = new ArrayList<>(Math.min(limit, lo));
+            for (int i = lo - 1; i >= 0 && result.size() < limit; i--) {
+                if (arr[i].timestamp < from) break;
+                result.add(arr[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Transfers under contention: most transfers hit a handful of hot accounts,
+ * in both directions, from many threads at once.
+ *
+ *   java -cp out:bench-out bank.TransferContentionBenchmark [accounts] [hot] [threads] [seconds] [hotPercent]
+ *
+ * Defaults: 10,000 accounts, 8 hot, 4 threads per core, 10 seconds, 90% of
+ * transfers between hot accounts. Runs an in-memory Bank (no journal), so
+ * it measures locking, not fsync.
+ *
+ * Checks at the end:
+ *   - the total balance didn't change (money only moved)
+ *   - every thread finished (ordered locking: no deadlock)
+ */
+public class TransferContentionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accounts   = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int hot        = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int threads    = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 4;
+        int seconds    = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int hotPercent = args.length > 4 ? Integer.parseInt(args[4]) : 90;
+
+        Bank bank = new Bank();
+        int[] ids = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = bank.createAccount("Owner " + i, "owner" + i + "@mail.com", 10_000_00, "SAVINGS").number;
+        }
+        long before = bank.getStats().totalBalance();
+
+        System.out.printf("%,d accounts (%d hot), %d threads, %d s, %d%% hot%n",
+                          accounts, hot, threads, seconds, hotPercent);
+
+        LongAdder done     = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        long[] worst = new long[threads];
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            ts[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    boolean hotPair = rnd.nextInt(100) < hotPercent;
+                    int range = hotPair ? hot : accounts;
+                    int a = rnd.nextInt(range);
+                    int b = rnd.nextInt(range - 1);
+                    if (b >= a) b++; // never the same account
+                    long start = System.nanoTime();
+                    try {
+                        bank.transfer(ids[a], ids[b], 1 + rnd.nextInt(100_00), "Bench");
+                        done.increment();
+                    } catch (RuntimeException e) {
+                        rejected.increment(); // insufficient funds
+                    }
+                    worst[id] = Math.max(worst[id], System.nanoTime() - start);
+                }
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts) {
+            t.join(seconds * 1000L + 30_000);
+            if (t.isAlive()) throw new IllegalStateException("A thread is stuck — deadlock?");
+        }
+
+        long max = 0;
+        for (long w : worst) max = Math.max(max, w);
+        long after = bank.getStats().totalBalance();
+        System.out.printf("  transfers:   %,12d  (%,d/s)%n", done.sum(), done.sum() / seconds);
+        System.out.printf("  rejected:    %,12d%n", rejected.sum());
+        System.out.printf("  worst:       %,12d us%n", max / 1000);
+        System.out.printf("  balance:     %s -> %s  %s%n", Money.format(before), Money.format(after),
+                          before == after ? "(conserved)" : "MISMATCH");
+        if (before != after) System.exit(1);
+    }
+}
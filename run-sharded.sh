@@ -0,0 +1,42 @@
+#!/bin/bash
+# Start a sharded bank: N shards (default 2) on ports 8091, 8092, ... and a
+# Router in front of them on 8081. Each shard keeps its data in data/shard-<port>.
+#   ./run-sharded.sh [shards]     start the cluster; Ctrl+C stops it all
+#   ./run-sharded.sh add <port>   start one more shard and move partitions to it
+cd "$(dirname "$0")"
+
+start_shard() {
+  java -Dbank.shard=true -Dbank.port=$1 -Dbank.data=data/shard-$1 -cp out bank.Server \
+    > logs/shard-$1.log 2>&1 &
+  for i in $(seq 1 50); do
+    curl -s localhost:$1/api/shard > /dev/null && return 0
+    sleep 0.2
+  done
+  echo "Shard on port $1 did not start; see logs/shard-$1.log"
+  return 1
+}
+
+mkdir -p logs
+if [ "$1" = "add" ]; then
+  start_shard $2 || exit 1
+  curl -s -X POST localhost:8081/api/shards -d "{\"url\":\"http://localhost:$2\"}"
+  echo
+  echo "Progress: curl localhost:8081/api/shards"
+  exit 0
+fi
+
+echo "Building NexBank..."
+mkdir -p out frontend
+cp index.html style.css frontend/ # served from here; refreshed every run so edits show up
+javac -encoding UTF-8 -d out *.java || { echo "Build failed."; exit 1; }
+
+trap 'kill $(jobs -p) 2> /dev/null' EXIT
+urls=""
+for i in $(seq 1 ${1:-2}); do
+  port=$((8090 + i))
+  start_shard $port || exit 1
+  urls="$urls${urls:+,}http://localhost:$port"
+done
+echo "Shards up: $urls"
+echo "Open http://localhost:8081 in your browser."
+java -Dbank.shards=$urls -cp out bank.Router
@@ -3,9 +3,11 @@ echo Building NexBank...
 
 if not exist out mkdir out
 if not exist frontend mkdir frontend
-if not exist frontend\index.html copy /Y index.html frontend\index.html >nul
+REM The server reads frontend\ - refresh it every run so edits show up
+copy /Y index.html frontend\index.html >nul
+copy /Y style.css frontend\style.css >nul
 
-javac -d out *.java
+javac -encoding UTF-8 -d out *.java
 if %errorlevel% neq 0 (
     echo Build failed.
     pause
@@ -1,10 +1,13 @@
 #!/bin/bash
+# Build and start without Gradle. With Gradle: gradle run (see build.gradle).
+cd "$(dirname "$0")"
 echo "Building NexBank..."
-mkdir -p out
-javac -d out src/bank/*.java
+mkdir -p out frontend
+cp index.html style.css frontend/ # served from here; refreshed every run so edits show up
+javac -encoding UTF-8 -d out *.java
 if [ $? -eq 0 ]; then
   echo "Build successful! Starting server..."
-  echo "Open http://localhost:8080 in your browser."
+  echo "Open http://localhost:8081 in your browser."
   java -cp out bank.Server
 else
   echo "Build failed."